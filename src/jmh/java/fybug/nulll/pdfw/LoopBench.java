@@ -0,0 +1,121 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fybug.nulll.pdfw.loopex.LoopState;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>{@link Loop#runback(WatchKey, List)} 基准.</h2>
+ * 测量不同长度的回调链下分发一次触发的全部事件的开销<br/>
+ * 使用 {@code -prof gc} 查看每次分发的内存分配
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since jmh 0.0.1
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public
+class LoopBench {
+    /** 回调链长度 */
+    @Param( {"1", "10", "100"} ) int chain;
+    /** 每次触发的事件数量 */
+    @Param( {"1", "16"} ) int events;
+
+    private Server server;
+    private BackLoop loop;
+    private Path dir;
+    private WatchKey key;
+    private List<WatchEvent<?>> list;
+
+    //----------------------------------------------------------------------------------------------
+
+    @Setup
+    public
+    void setUp() throws IOException {
+        server = new Server();
+        dir = Files.createTempDirectory("pdfw-bench");
+        key = server.watchPath(dir, WaServer.KINDS_ALL);
+        loop = new BackLoop(server, dir.toString());
+
+        var backs = new StateBack[chain];
+        for ( int i = 0; i < chain; i++ )
+            backs[i] = (event, path) -> LoopState.WATCH_NEXT;
+        loop.addCall(ENTRY_MODIFY, backs);
+
+        list = new ArrayList<>(events);
+        for ( int i = 0; i < events; i++ )
+            list.add(new PathEvent(ENTRY_MODIFY, 1, Path.of("f" + i)));
+    }
+
+    @TearDown
+    public
+    void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(dir);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public
+    LoopState runback() { return loop.runback(key, list); }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 只用于分发的监听服务
+    static final
+    class Server extends WaServer<BackLoop> {
+        Server() throws IOException { super(null); }
+    }
+
+    // 只用于分发的处理程序
+    static final
+    class BackLoop extends Loop<Server, BackLoop> {
+        private final String path;
+
+        BackLoop(Server ws, String path) {
+            super(ws);
+            this.path = path;
+        }
+
+        @Override
+        protected
+        String keyToPath(WatchKey key) { return path; }
+
+        @NotNull
+        @Override
+        public
+        String toPath() { return path; }
+
+        @Override
+        protected
+        void close0() {}
+    }
+}
@@ -0,0 +1,117 @@
+package fybug.nulll.pdfw.loopex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.concurrent.TimeUnit;
+
+import fybug.nulll.pdfw.PathEvent;
+import fybug.nulll.pdfw.WaServer;
+import fybug.nulll.pdfw.watch.BenchKeys;
+import fybug.nulll.pdfw.watch.DepthWatch;
+import fybug.nulll.pdfw.watch.SendWatch;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>过滤处理程序基准.</h2>
+ * 测量 {@link SendFile}、{@link FileSend}、{@link DepthFile} 每个事件的过滤开销<br/>
+ * 修改事件需要检查文件类型，删除事件只比较路径，使用 {@code -prof gc} 查看内存分配
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since jmh 0.0.1
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public
+class FilterBench {
+    /** 过滤的处理程序 */
+    @Param( {"SendFile", "FileSend", "DepthFile"} ) String filter;
+
+    private Path dir;
+    private SendWatch send;
+    private DepthWatch depth;
+    private SendFile sendFile;
+    private FileSend fileSend;
+    private DepthFile depthFile;
+    private WatchKey key;
+    private WatchEvent<?> modify;
+    private WatchEvent<?> delete;
+
+    //----------------------------------------------------------------------------------------------
+
+    @Setup
+    public
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("pdfw-bench");
+        var file = Files.createFile(dir.resolve("f.txt"));
+        send = SendWatch.build().build();
+        depth = DepthWatch.build().build();
+
+        switch ( filter ) {
+            case "SendFile":
+                sendFile = send.checkFil(dir, WaServer.KINDS_ALL);
+                key = BenchKeys.keyOf(sendFile);
+                break;
+            case "FileSend":
+                fileSend = send.watchFil(file, WaServer.KINDS_ALL);
+                key = BenchKeys.keyOf(fileSend);
+                break;
+            default:
+                depthFile = depth.checkFil(dir);
+                key = BenchKeys.keyOf(depth, dir);
+        }
+
+        modify = new PathEvent(ENTRY_MODIFY, 1, Path.of("f.txt"));
+        delete = new PathEvent(ENTRY_DELETE, 1, Path.of("f.txt"));
+    }
+
+    @TearDown
+    public
+    void tearDown() throws IOException {
+        send.close();
+        depth.close();
+        Files.deleteIfExists(dir.resolve("f.txt"));
+        Files.deleteIfExists(dir);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public
+    boolean modify() { return check(modify); }
+
+    @Benchmark
+    public
+    boolean delete() { return check(delete); }
+
+    // 调用当前处理程序的过滤
+    private
+    boolean check(WatchEvent<?> event) {
+        if (sendFile != null)
+            return sendFile.runCheck(key, event, event.kind());
+        if (fileSend != null)
+            return fileSend.runCheck(key, event, event.kind());
+        return depthFile.runCheck(key, event, event.kind());
+    }
+}
@@ -0,0 +1,25 @@
+package fybug.nulll.pdfw.watch;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * <h2>基准用的监听键查询.</h2>
+ * 供其他包的基准获取处理程序使用的监听键
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since jmh 0.0.1
+ */
+@UtilityClass
+public
+class BenchKeys {
+    /** 获取目录对应的监听键 */
+    public
+    WatchKey keyOf(DepthWatch watch, Path dir) { return watch.parhToKey(dir.toAbsolutePath()); }
+
+    /** 获取处理程序注册的监听键 */
+    public
+    WatchKey keyOf(SendLoop loop) { return loop.KEY; }
+}
@@ -0,0 +1,88 @@
+package fybug.nulll.pdfw.watch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.concurrent.TimeUnit;
+
+import fybug.nulll.pdfw.PathEvent;
+import fybug.nulll.pdfw.WaServer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>{@link SendWatch#checkParent} 基准.</h2>
+ * 测量父目录被监听和未被监听时每个事件的检查开销<br/>
+ * 使用 {@code -t} 指定线程数可测量并行分发时的扩展性，使用 {@code -prof gc} 查看内存分配
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since jmh 0.0.1
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public
+class CheckParentBench {
+    /** 父目录是否被监听 */
+    @Param( {"true", "false"} ) boolean parentWatched;
+
+    private SendWatch watch;
+    private SendLoop loop;
+    private Path root;
+    private WatchEvent<?> create;
+    private WatchEvent<?> modify;
+
+    //----------------------------------------------------------------------------------------------
+
+    @Setup
+    public
+    void setUp() throws IOException {
+        root = Files.createTempDirectory("pdfw-bench");
+        var sub = Files.createDirectories(root.resolve("sub"));
+        watch = SendWatch.build().build();
+        if (parentWatched)
+            watch.watchDir(root, WaServer.KINDS_ALL);
+        loop = watch.watchDir(sub, WaServer.KINDS_ALL);
+
+        create = new PathEvent(ENTRY_CREATE, 1, Path.of("f"));
+        modify = new PathEvent(ENTRY_MODIFY, 1, Path.of("f"));
+    }
+
+    @TearDown
+    public
+    void tearDown() throws IOException {
+        watch.close();
+        Files.deleteIfExists(root.resolve("sub"));
+        Files.deleteIfExists(root);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public
+    boolean checkCreate()
+    { return watch.checkParent(loop.self, loop.par, create.context(), ENTRY_CREATE); }
+
+    @Benchmark
+    public
+    boolean checkModify()
+    { return watch.checkParent(loop.self, loop.par, modify.context(), ENTRY_MODIFY); }
+}
@@ -0,0 +1,93 @@
+package fybug.nulll.pdfw.watch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>{@link DepthWatch#forpath} 基准.</h2>
+ * 测量注册一个合成目录树的耗时，目录树每层 10 个子目录<br/>
+ * 目录树生成在 {@code build/jmh-tree} 下，生成后重复使用
+ * <br/><br/>
+ * 系统监听时每个目录占用一个 inotify 监听，100 万个目录需要先调大
+ * {@code fs.inotify.max_user_watches}
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since jmh 0.0.1
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 1 )
+@Measurement( iterations = 3 )
+@Fork( 1 )
+public
+class ForpathBench {
+    /** 目录数量 */
+    @Param( {"1000", "10000", "100000", "1000000"} ) int dirs;
+    /** 注册的并行数量，0 为公共线程池 */
+    @Param( {"0", "1"} ) int parallelism;
+
+    private Path root;
+    private DepthWatch watch;
+
+    //----------------------------------------------------------------------------------------------
+
+    @Setup( Level.Trial )
+    public
+    void tree() throws IOException {
+        root = Path.of("build", "jmh-tree", String.valueOf(dirs)).toAbsolutePath();
+        var done = root.resolve(".done");
+        if (Files.exists(done))
+            return;
+        // 每层 10 个子目录，直到达到数量
+        int depth = (int) Math.ceil(Math.log10(dirs));
+        make(root, depth, new int[]{dirs});
+        Files.createFile(done);
+    }
+
+    // 生成目录树，按深度优先生成到剩余数量为 0
+    private static
+    void make(Path dir, int depth, int[] left) throws IOException {
+        if (depth == 0)
+            return;
+        for ( int i = 0; i < 10 && left[0] > 0; i++ ) {
+            var sub = dir.resolve("d" + i);
+            Files.createDirectories(sub);
+            left[0]--;
+            make(sub, depth - 1, left);
+        }
+    }
+
+    @Setup( Level.Invocation )
+    public
+    void open() throws IOException { watch = DepthWatch.build().parallelism(parallelism).build(); }
+
+    @TearDown( Level.Invocation )
+    public
+    void close() { watch.close(); }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public
+    int forpath() throws IOException {
+        watch.watchDir(root);
+        return watch.tree.size();
+    }
+}
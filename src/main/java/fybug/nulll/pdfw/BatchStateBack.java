@@ -0,0 +1,26 @@
+package fybug.nulll.pdfw;
+import java.nio.file.WatchEvent;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import fybug.nulll.pdfw.loopex.LoopState;
+
+/**
+ * <h2>{@link Loop} 批量处理回调.</h2>
+ * 一次接收监听键一次触发的全部事件，可用于批量更新<br/>
+ * 注册到指定事件类型时只接收该类型的事件，注册为默认回调时接收没有声明批量回调的类型的事件<br/>
+ * 接收的事件已经过 {@link Loop} 的过滤
+ * <br/><br/>
+ * List&lt;WatchEvent&lt;?&gt;&gt; 为本次触发的事件，按触发顺序排列，只读<br/>
+ * String 为当前触发的路径<br/>
+ * LoopState 为必须要返回的状态
+ * <br/><br/>
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see StateBack
+ * @see LoopState
+ * @since PDFileWatch 0.0.1
+ */
+public
+interface BatchStateBack extends BiFunction<List<WatchEvent<?>>, String, LoopState> {}
@@ -0,0 +1,125 @@
+package fybug.nulll.pdfw;
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>回调表.</h2>
+ * 按事件类型下标存放回调链的不可变表<br/>
+ * 修改时生成新的表，读取时无需加锁，由 {@link Loop} 整体替换发布
+ *
+ * @param <B> 回调类型
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop
+ * @since PDFileWatch 0.0.1
+ */
+@SuppressWarnings( "unchecked" )
+final
+class CallTable<B> {
+    /** 有固定下标的事件类型数量 */
+    static final int KIND_SIZE = 3;
+
+    // 下标 -> 回调链，未声明为 null
+    private final Object[][] kinds;
+    // 其他类型的回调链
+    private final Map<WatchEvent.Kind<?>, Object[]> other;
+    // 默认回调链
+    private final Object[] defa;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 构造空表
+     *
+     * @param empty 回调类型的空数组，用于生成对应类型的回调链
+     */
+    CallTable(B[] empty) { this(new Object[KIND_SIZE][], Map.of(), empty); }
+
+    private
+    CallTable(Object[][] kinds, Map<WatchEvent.Kind<?>, Object[]> other, Object[] defa) {
+        this.kinds = kinds;
+        this.other = other;
+        this.defa = defa;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 获取事件类型的下标，没有固定下标返回 -1 */
+    static
+    int index(WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE)
+            return 0;
+        if (kind == ENTRY_MODIFY)
+            return 1;
+        if (kind == ENTRY_DELETE)
+            return 2;
+        return -1;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 追加回调，返回新的表 */
+    CallTable<B> add(WatchEvent.Kind<?> kind, B[] backs) {
+        int i = index(kind);
+        if (i < 0) {
+            var map = new HashMap<>(other);
+            map.put(kind, concat(other.get(kind), backs));
+            return new CallTable<>(kinds, Map.copyOf(map), defa);
+        }
+        var k = kinds.clone();
+        k[i] = concat(k[i], backs);
+        return new CallTable<>(k, other, defa);
+    }
+
+    /** 追加默认回调，返回新的表 */
+    CallTable<B> addDefa(B[] backs) { return new CallTable<>(kinds, other, concat(defa, backs)); }
+
+    // 连接回调链，保持回调类型的数组
+    private
+    Object[] concat(Object[] old, Object[] add) {
+        if (old == null)
+            old = Arrays.copyOf(defa, 0);
+        var n = Arrays.copyOf(old, old.length + add.length, defa.getClass());
+        System.arraycopy(add, 0, n, old.length, add.length);
+        return n;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 获取事件类型的回调链
+     * <p>
+     * 未声明该类型时返回默认回调链，返回的数组不可修改
+     */
+    B[] get(WatchEvent.Kind<?> kind) {
+        int i = index(kind);
+        Object[] c = i < 0 ? other.get(kind) : kinds[i];
+        return (B[]) (c == null ? defa : c);
+    }
+
+    /** 是否声明了该类型的回调链 */
+    boolean has(WatchEvent.Kind<?> kind) {
+        int i = index(kind);
+        return (i < 0 ? other.get(kind) : kinds[i]) != null;
+    }
+
+    /** 默认回调链，不可修改 */
+    B[] defa() { return (B[]) defa; }
+
+    /** 是否没有任何回调 */
+    boolean isEmpty() {
+        if (defa.length > 0 || !other.isEmpty())
+            return false;
+        for ( Object[] c : kinds )
+            if (c != null)
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,180 @@
+package fybug.nulll.pdfw;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * <h2>内容变化检查.</h2>
+ * 记录文件的大小、修改时间和内容摘要，用于过滤内容没有变化的修改事件<br/>
+ * 大小、修改时间和文件标识都没变时视为没有变化，否则计算内容摘要对比<br/>
+ * 记录时修改时间距当时不足 {@link #TICK} 的记录不可信，之后同一时间内的写入不会改变修改时间，仍需计算摘要
+ * <br/><br/>
+ * 摘要按块计算 CRC32C 后合并，各块按位置读取到堆内存，超过 {@link #PARALLEL} 的文件并行计算各块<br/>
+ * 记录数量有上限，超出时淘汰最久未使用的记录，没有记录的文件视为有变化
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop#checkContent(int)
+ * @since PDFileWatch 0.0.1
+ */
+final
+class ContentCheck {
+    /** 摘要的分块大小 */
+    static final int CHUNK = 4 << 20;
+    /** 并行计算的文件大小下限 */
+    static final long PARALLEL = 4L * CHUNK;
+    /** 修改时间的精度上限，FAT 为 2 秒 */
+    static final long TICK = 2000;
+
+    // 路径 -> 记录，按访问顺序淘汰，由 this 保护
+    private final Map<Path, Stamp> stamps;
+
+    //----------------------------------------------------------------------------------------------
+
+    /** @param capacity 记录数量上限 */
+    ContentCheck(int capacity) {
+        stamps = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected
+            boolean removeEldestEntry(Map.Entry<Path, Stamp> eldest) { return size() > capacity; }
+        };
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 检查文件内容是否变化并记录
+     *
+     * @param path 文件路径
+     * @param attr 文件属性，不存在为 {@code null}
+     *
+     * @return 无法确定时返回 {@code true}
+     */
+    boolean changed(Path path, BasicFileAttributes attr) {
+        if (attr == null || !attr.isRegularFile()) {
+            remove(path);
+            return true;
+        }
+        var size = attr.size();
+        var time = attr.lastModifiedTime().toMillis();
+        var key = attr.fileKey();
+        Stamp old;
+        synchronized ( this ){
+            old = stamps.get(path);
+        }
+        // 只有属性修改
+        if (old != null && old.size == size && old.time == time && Objects.equals(old.key, key) &&
+            old.checked - time >= TICK)
+            return false;
+
+        // 先取时间，计算摘要期间的写入会让记录不可信
+        var checked = System.currentTimeMillis();
+
+        long hash;
+        try {
+            hash = hash(path, size);
+        } catch ( IOException e ) {
+            // 读取中被截断或删除
+            remove(path);
+            return true;
+        }
+        synchronized ( this ){
+            stamps.put(path, new Stamp(size, time, key, checked, hash));
+        }
+        return old == null || old.size != size || old.hash != hash;
+    }
+
+    /** 移除记录 */
+    synchronized
+    void remove(Path path) { stamps.remove(path); }
+
+    /** 清除全部记录 */
+    synchronized
+    void clear() { stamps.clear(); }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 计算内容摘要
+    private static
+    long hash(Path path, long size) throws IOException {
+        try ( var channel = FileChannel.open(path, StandardOpenOption.READ) ) {
+            int chunks = (int) Math.max(1, (size + CHUNK - 1) / CHUNK);
+            var crcs = new long[chunks];
+            var range = IntStream.range(0, chunks);
+            if (size >= PARALLEL)
+                range = range.parallel();
+            try {
+                range.forEach(i -> {
+                    var pos = (long) i * CHUNK;
+                    try {
+                        crcs[i] = crc(read(channel, pos, (int) Math.min(CHUNK, size - pos)));
+                    } catch ( IOException e ) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch ( UncheckedIOException e ) {
+                throw e.getCause();
+            }
+
+            long hash = 0;
+            for ( long crc : crcs )
+                hash = combine(hash, crc);
+            return hash;
+        }
+    }
+
+    // 按位置读取一块，各块可并行读取
+    private static
+    ByteBuffer read(FileChannel channel, long pos, int length) throws IOException {
+        var buf = ByteBuffer.allocate(length);
+        while( buf.hasRemaining() ){
+            // 读取中被截断
+            if (channel.read(buf, pos + buf.position()) < 0)
+                throw new IOException("file truncated");
+        }
+        return buf.flip();
+    }
+
+    // 计算一块的 CRC32C
+    private static
+    long crc(ByteBuffer buf) {
+        var crc = new CRC32C();
+        crc.update(buf);
+        return crc.getValue();
+    }
+
+    // 合并各块的摘要
+    private static
+    long combine(long hash, long crc) { return hash * 0x9E3779B97F4A7C15L + crc; }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 文件记录
+    private static final
+    class Stamp {
+        final long size;
+        final long time;
+        // 文件标识，替换文件时变化
+        final Object key;
+        // 记录的时间
+        final long checked;
+        final long hash;
+
+        Stamp(long size, long time, Object key, long checked, long hash) {
+            this.size = size;
+            this.time = time;
+            this.key = key;
+            this.checked = checked;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package fybug.nulll.pdfw;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>分片分发器.</h2>
+ * 按 {@link WatchKey} 将事件分片到固定的工作线程中处理<br/>
+ * 同一个监听键的事件始终进入同一个工作线程，保证顺序<br/>
+ * 不同监听键的事件并行处理
+ * <br/><br/>
+ * 可限制每个工作线程队列中的事件数量，队列满时按 {@link OverloadPolicy} 处理新的事件<br/>
+ * 延迟触发的回调也交给监听键对应的工作线程，不受队列上限限制
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see WaServer
+ * @since PDFileWatch 0.0.1
+ */
+final
+class Dispatch {
+    // 分发的目标服务
+    private final WaServer<?> server;
+    // 工作线程
+    private final Lane[] lanes;
+    // 每个队列的事件数量上限，小于 1 则不限制
+    private volatile int capacity = 0;
+    // 队列满时的处理方式
+    private volatile OverloadPolicy policy = OverloadPolicy.BLOCK;
+    // 是否关闭
+    private volatile boolean close = false;
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 创建并启动指定数量的工作线程 */
+    Dispatch(WaServer<?> server, int size, ThreadFactory factory) {
+        this.server = server;
+        lanes = new Lane[size];
+        for ( int i = 0; i < size; i++ )
+            lanes[i] = new Lane(factory);
+        for ( Lane lane : lanes )
+            lane.thread.start();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 限制队列大小
+     *
+     * @param capacity 每个工作线程队列中的事件数量上限，小于 1 则不限制
+     * @param policy   队列满时的处理方式
+     */
+    void limit(int capacity, OverloadPolicy policy) {
+        this.policy = policy;
+        this.capacity = capacity;
+        // 唤醒等待中的监听线程
+        for ( Lane lane : lanes ) {
+            lane.lock.lock();
+            try {
+                lane.notFull.signalAll();
+            } finally {
+                lane.lock.unlock();
+            }
+        }
+    }
+
+    /** 提交一次监听键的事件，队列满且处理方式为阻塞时等待 */
+    void send(WatchKey key, List<WatchEvent<?>> events) throws InterruptedException {
+        if (events.isEmpty())
+            return;
+        lanes[index(key)].put(new Batch(key, events));
+    }
+
+    /** 在监听键对应的工作线程中运行任务，优先于队列中的事件 */
+    void submit(WatchKey key, Runnable task) { lanes[index(key)].submit(task); }
+
+    /** 队列中的事件数量 */
+    int size() {
+        int size = 0;
+        for ( Lane lane : lanes )
+            size += lane.size;
+        return size;
+    }
+
+    // 计算监听键对应的工作线程
+    private
+    int index(WatchKey key) {
+        int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % lanes.length;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 停止所有工作线程，未处理的事件将被丢弃 */
+    void close() {
+        close = true;
+        for ( Lane lane : lanes ) {
+            lane.lock.lock();
+            try {
+                lane.queue.clear();
+                lane.tasks.clear();
+                lane.size = 0;
+                lane.notEmpty.signalAll();
+                lane.notFull.signalAll();
+            } finally {
+                lane.lock.unlock();
+            }
+            lane.thread.interrupt();
+        }
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 一次监听键的事件
+    private static
+    class Batch {
+        final WatchKey key;
+        final List<WatchEvent<?>> events;
+        // 延迟的回调，为 null 则处理事件
+        final Runnable task;
+
+        Batch(WatchKey key, List<WatchEvent<?>> events) {
+            this.key = key;
+            this.events = events;
+            task = null;
+        }
+
+        Batch(Runnable task) {
+            key = null;
+            events = List.of();
+            this.task = task;
+        }
+    }
+
+    // 溢出事件
+    private static final
+    class Overflow implements WatchEvent<Object> {
+        static final List<WatchEvent<?>> LIST = List.of(new Overflow());
+
+        @Override
+        public
+        Kind<Object> kind() { return StandardWatchEventKinds.OVERFLOW; }
+
+        @Override
+        public
+        int count() { return 1; }
+
+        @Override
+        public
+        Object context() { return null; }
+    }
+
+    // 工作线程
+    private
+    class Lane implements Runnable {
+        // 队列锁，不使用 synchronized 避免虚拟线程在等待时占用载体线程
+        final ReentrantLock lock = new ReentrantLock();
+        // 队列非空
+        final Condition notEmpty = lock.newCondition();
+        // 队列有空位
+        final Condition notFull = lock.newCondition();
+        // 待处理队列，由 lock 保护
+        final ArrayDeque<Batch> queue = new ArrayDeque<>();
+        // 延迟的回调，由 lock 保护
+        final ArrayDeque<Batch> tasks = new ArrayDeque<>();
+        // 队列中的事件数量，在 lock 中修改
+        volatile int size = 0;
+        // 当前线程
+        final Thread thread;
+
+        Lane(ThreadFactory factory) { thread = factory.newThread(this); }
+
+        //------------------------------------------------------------------------------------------
+
+        // 放入队列，超出上限时按处理方式处理
+        void put(Batch batch) throws InterruptedException {
+            lock.lock();
+            try {
+                put0(batch);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private
+        void put0(Batch batch) throws InterruptedException {
+            var max = capacity;
+            var n = batch.events.size();
+            if (max < 1 || size + n <= max) {
+                add(batch);
+                return;
+            }
+
+            var policy = Dispatch.this.policy;
+            if (policy == OverloadPolicy.BLOCK) {
+                server.STATS.blocked();
+                // 队列为空时超出上限也放入
+                while( size > 0 && (max = capacity) > 0 && size + n > max && !close )
+                    notFull.await();
+                if (!close)
+                    add(batch);
+                return;
+            }
+
+            add(batch);
+            switch ( policy ) {
+                case CONFLATE:
+                    conflate();
+                    if (size > max)
+                        drop(max);
+                    break;
+                case DEGRADE:
+                    degrade();
+                    break;
+                default:
+                    drop(max);
+            }
+        }
+
+        private
+        void add(Batch batch) {
+            queue.add(batch);
+            size += batch.events.size();
+            notEmpty.signal();
+        }
+
+        // 从队列头部丢弃事件直到不超出上限
+        private
+        void drop(int max) {
+            long count = 0;
+            while( size > max ){
+                var head = queue.poll();
+                var over = size - max;
+                var len = head.events.size();
+                if (len > over) {
+                    // 保留后面的部分
+                    queue.addFirst(new Batch(head.key, head.events.subList(over, len)));
+                    len = over;
+                }
+                // 被丢弃的删除事件不能再清除路径类型
+                server.TYPES.update(server, head.key, head.events.subList(0, len));
+                size -= len;
+                count += len;
+            }
+            server.STATS.dropped(count);
+        }
+
+        // 同一监听键下同一路径只保留最后一个事件，新建后的修改依旧是新建，新建后删除则都不保留
+        private
+        void conflate() {
+            var keys = new LinkedHashMap<WatchKey, LinkedHashMap<Object, WatchEvent<?>>>();
+            // 在队列中新建的路径
+            var creates = new HashMap<WatchKey, Set<Object>>();
+            for ( Batch batch : queue ) {
+                var paths = keys.computeIfAbsent(batch.key, k -> new LinkedHashMap<>());
+                var created = creates.computeIfAbsent(batch.key, k -> new HashSet<>());
+                for ( WatchEvent<?> event : batch.events ) {
+                    var context = event.context();
+                    var kind = event.kind();
+                    // 移到最后，保持事件顺序
+                    var old = paths.remove(context);
+                    if (old == null) {
+                        if (kind == ENTRY_CREATE)
+                            created.add(context);
+                    } else if (old.kind() == ENTRY_CREATE) {
+                        if (kind == ENTRY_MODIFY) {
+                            event = old;
+                        } else if (kind == ENTRY_DELETE && created.contains(context)) {
+                            // 队列前后都不存在，删除事件仍需清除路径类型
+                            server.TYPES.update(server, batch.key, List.of(event));
+                            continue;
+                        }
+                    }
+                    paths.put(context, event);
+                }
+            }
+            var before = size;
+            queue.clear();
+            size = 0;
+            keys.forEach((key, paths) -> {
+                if (paths.isEmpty())
+                    return;
+                queue.add(new Batch(key, new ArrayList<>(paths.values())));
+                size += paths.size();
+            });
+            server.STATS.conflated(before - size);
+        }
+
+        // 每个监听键只保留一个溢出事件
+        private
+        void degrade() {
+            var keys = new LinkedHashSet<WatchKey>();
+            for ( Batch batch : queue )
+                keys.add(batch.key);
+            server.STATS.degraded(size);
+            queue.clear();
+            size = 0;
+            for ( WatchKey key : keys )
+                add(new Batch(key, Overflow.LIST));
+        }
+
+        // 放入延迟的回调
+        void submit(Runnable task) {
+            lock.lock();
+            try {
+                tasks.add(new Batch(task));
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 取出下一批事件或延迟的回调
+        Batch take() throws InterruptedException {
+            lock.lock();
+            try {
+                while( queue.isEmpty() && tasks.isEmpty() )
+                    notEmpty.await();
+                if (!tasks.isEmpty())
+                    return tasks.poll();
+                var batch = queue.poll();
+                size -= batch.events.size();
+                // 唤醒等待空位的监听线程
+                notFull.signalAll();
+                return batch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        //------------------------------------------------------------------------------------------
+
+        @Override
+        public
+        void run() {
+            try {
+                /* 直到中断 */
+                while( !Thread.currentThread().isInterrupted() ){
+                    var batch = take();
+                    try {
+                        if (batch.task != null)
+                            batch.task.run();
+                        else
+                            server.state(batch.key, batch.events);
+                    } catch ( RuntimeException e ) {
+                        e.printStackTrace();
+                    }
+                }
+            } catch ( InterruptedException e ) {
+                // ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>事件发布者.</h2>
+ * 将 {@link Loop} 或 {@link WaServer} 通过过滤的事件发布给 {@link Flow.Subscriber}，按订阅者的请求数量发送<br/>
+ * 发布的事件为 {@link PathEvent}，{@link PathEvent#context()} 为事件的完整路径
+ * <br/><br/>
+ * 每个订阅者有独立的缓冲区，事件在执行器中发送，不阻塞监听线程<br/>
+ * 缓冲区满后开启合并时，同一路径的事件合并为一个，合并的路径数量同样受缓冲区大小限制，
+ * 超出时丢弃最早的合并事件；未开启合并时丢弃新的事件<br/>
+ * 丢弃的数量记录在 {@link #dropped()} 中
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop#publisher(int, boolean)
+ * @see WaServer#publisher(int, boolean)
+ * @since PDFileWatch 0.0.1
+ */
+public final
+class EventPublisher implements Flow.Publisher<PathEvent>, Closeable {
+    // 每个订阅者的缓冲区大小
+    private final int buffer;
+    // 缓冲区满后是否合并
+    private final boolean conflate;
+    // 发送事件的执行器
+    private final Executor executor;
+    // 当前的订阅
+    private final CopyOnWriteArrayList<Sub> subs = new CopyOnWriteArrayList<>();
+    // 丢弃的事件数量
+    private final LongAdder dropped = new LongAdder();
+    // 是否关闭
+    private volatile boolean close = false;
+
+    //----------------------------------------------------------------------------------------------
+
+    EventPublisher(int buffer, boolean conflate, Executor executor) {
+        this.buffer = Math.max(buffer, 1);
+        this.conflate = conflate;
+        this.executor = executor;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    void subscribe(@NotNull Flow.Subscriber<? super PathEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+        var sub = new Sub(subscriber);
+        subscriber.onSubscribe(sub);
+        if (close) {
+            sub.complete();
+            return;
+        }
+        subs.add(sub);
+        // 加入期间被关闭，关闭时可能没有遍历到
+        if (close && subs.remove(sub))
+            sub.complete();
+    }
+
+    /** 发布事件 */
+    void offer(WatchEvent<?> event, String dir) {
+        if (subs.isEmpty() || !(event.context() instanceof Path))
+            return;
+        var e = new PathEvent(kind(event), event.count(), Path.of(dir).resolve((Path) event.context()));
+        for ( Sub sub : subs )
+            sub.offer(e);
+    }
+
+    // 路径事件的类型
+    @SuppressWarnings( "unchecked" )
+    private static
+    WatchEvent.Kind<Path> kind(WatchEvent<?> event) { return (WatchEvent.Kind<Path>) event.kind(); }
+
+    /** 丢弃的事件数量 */
+    public
+    long dropped() { return dropped.sum(); }
+
+    /** 当前的订阅数量 */
+    public
+    int subscribers() { return subs.size(); }
+
+    /** 发送完缓冲的事件后结束所有订阅 */
+    @Override
+    public
+    void close() {
+        close = true;
+        for ( Sub sub : subs )
+            sub.complete();
+        subs.clear();
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 一个订阅
+    private final
+    class Sub implements Flow.Subscription {
+        private final Flow.Subscriber<? super PathEvent> subscriber;
+        // 缓冲的事件，由 this 保护
+        private final ArrayDeque<PathEvent> queue = new ArrayDeque<>();
+        // 合并中的事件，路径 -> 事件，由 this 保护
+        private final LinkedHashMap<Path, PathEvent> merged = new LinkedHashMap<>();
+        // 请求的数量，由 this 保护
+        private long requested = 0;
+        // 是否结束
+        private volatile boolean done = false, cancel = false;
+        // 非法请求产生的错误
+        private Throwable error;
+        // 发送中的标记
+        private final AtomicInteger wip = new AtomicInteger();
+
+        Sub(Flow.Subscriber<? super PathEvent> subscriber) { this.subscriber = subscriber; }
+
+        // 缓冲事件
+        void offer(PathEvent event) {
+            synchronized ( this ){
+                if (cancel || done)
+                    return;
+                if (queue.size() < buffer && merged.isEmpty()) {
+                    queue.add(event);
+                } else if (!conflate) {
+                    dropped.increment();
+                    return;
+                } else {
+                    merge(event);
+                }
+            }
+            drain();
+        }
+
+        // 合并同一路径的事件
+        private
+        void merge(PathEvent event) {
+            var old = merged.remove(event.context());
+            if (old != null) {
+                // 新建后的修改依旧是新建
+                var kind = old.kind() == ENTRY_CREATE && event.kind() == ENTRY_MODIFY ?
+                           ENTRY_CREATE : event.kind();
+                event = new PathEvent(kind, old.count() + event.count(), event.context());
+            } else if (merged.size() >= buffer) {
+                Iterator<PathEvent> it = merged.values().iterator();
+                it.next();
+                it.remove();
+                dropped.increment();
+            }
+            merged.put(event.context(), event);
+        }
+
+        // 取出下一个事件
+        private
+        PathEvent poll() {
+            var e = queue.poll();
+            if (e == null && !merged.isEmpty()) {
+                var it = merged.values().iterator();
+                e = it.next();
+                it.remove();
+            }
+            return e;
+        }
+
+        void complete() {
+            done = true;
+            drain();
+        }
+
+        //------------------------------------------------------------------------------------------
+
+        @Override
+        public
+        void request(long n) {
+            synchronized ( this ){
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    requested += n;
+                    if (requested < 0)
+                        requested = Long.MAX_VALUE;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public
+        void cancel() {
+            cancel = true;
+            subs.remove(this);
+            synchronized ( this ){
+                queue.clear();
+                merged.clear();
+            }
+        }
+
+        //------------------------------------------------------------------------------------------
+
+        // 在执行器中发送，同时只有一个发送任务
+        private
+        void drain() {
+            if (wip.getAndIncrement() == 0)
+                executor.execute(this::run);
+        }
+
+        private
+        void run() {
+            int missed = 1;
+            do {
+                while( true ){
+                    PathEvent e;
+                    Throwable err;
+                    boolean end;
+                    synchronized ( this ){
+                        if (cancel)
+                            return;
+                        err = error;
+                        e = err == null && requested > 0 ? poll() : null;
+                        if (e != null)
+                            requested--;
+                        end = done && queue.isEmpty() && merged.isEmpty();
+                    }
+                    if (err != null) {
+                        cancel();
+                        subscriber.onError(err);
+                        return;
+                    }
+                    if (e != null) {
+                        try {
+                            subscriber.onNext(e);
+                        } catch ( RuntimeException ex ) {
+                            cancel();
+                            subscriber.onError(ex);
+                            return;
+                        }
+                        continue;
+                    }
+                    if (end) {
+                        cancel = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    break;
+                }
+                missed = wip.addAndGet(-missed);
+            } while( missed != 0 );
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * <h2>事件路径的属性.</h2>
+ * 同一个监听键下的同一个路径在一次分发中只读取一次属性，由过滤和回调共用，
+ * 通过 DirMux 共用监听键的处理程序也共用同一份属性，跟随符号链接<br/>
+ * 只判断类型时优先使用监听服务的类型缓存，缓存在新建事件读取属性时填入，删除事件和溢出事件时清除，
+ * 热点目录下的修改事件通常无需再读取属性
+ * <br/><br/>
+ * 在 {@link Loop#runCheck(WatchKey, WatchEvent, WatchEvent.Kind)} 中使用
+ * {@link Loop#attr(WatchKey, WatchEvent)} 获取，在回调中使用 {@link #current(WatchEvent)} 获取
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop
+ * @since PDFileWatch 0.0.1
+ */
+public final
+class FileAttr {
+    // 每个线程当前处理的事件，每次分发后清除
+    private static final ThreadLocal<FileAttr> CURRENT = ThreadLocal.withInitial(FileAttr::new);
+
+    // 类型
+    private static final int UNKNOWN = 0, NONE = 1, FILE = 2, DIR = 3, OTHER = 4;
+
+    // 所属服务的类型缓存
+    private Types types;
+    // 所属服务
+    private WaServer<?> server;
+    // 当前监听键和路径
+    private WatchKey key;
+    private Path context;
+    // 最近的事件
+    private WatchEvent<?> event;
+    // 事件的完整路径
+    private Path path;
+    // 读取的属性
+    private BasicFileAttributes attr;
+    // 是否已读取属性
+    private boolean read;
+    // 当前类型
+    private int type;
+
+    //----------------------------------------------------------------------------------------------
+
+    private
+    FileAttr() {}
+
+    /** 获取当前线程中该路径的属性，不是同一个监听键下的同一个路径则重新开始 */
+    static
+    FileAttr of(Loop<?, ?> loop, WatchKey key, WatchEvent<?> event) {
+        var attr = CURRENT.get();
+        var context = (Path) event.context();
+        attr.event = event;
+        if (attr.key != key || !Objects.equals(context, attr.context)) {
+            attr.server = loop.parent;
+            attr.types = loop.parent.TYPES;
+            attr.key = key;
+            attr.context = context;
+            attr.path = null;
+            attr.attr = null;
+            attr.read = false;
+            attr.type = UNKNOWN;
+        }
+        return attr;
+    }
+
+    /**
+     * 获取当前回调中事件的属性
+     *
+     * @param event 回调收到的事件
+     *
+     * @return 不在该事件的回调中返回 {@code null}
+     */
+    @Nullable
+    public static
+    FileAttr current(@NotNull WatchEvent<?> event) {
+        var attr = CURRENT.get();
+        return attr.event == event ? attr : null;
+    }
+
+    /** 一次分发结束，不再持有服务和事件 */
+    static
+    void clear() { CURRENT.remove(); }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 事件的完整路径 */
+    @NotNull
+    public
+    Path path() {
+        if (path == null)
+            path = server.keyToDir(key).resolve(context);
+        return path;
+    }
+
+    /**
+     * 读取路径的属性，一个事件只读取一次
+     *
+     * @return 路径不存在为 {@code null}
+     */
+    @Nullable
+    public
+    BasicFileAttributes attributes() {
+        if (!read) {
+            read = true;
+            try {
+                attr = Files.readAttributes(path(), BasicFileAttributes.class);
+            } catch ( IOException e ) {
+                attr = null;
+            }
+            type = attr == null ? NONE :
+                   attr.isRegularFile() ? FILE : attr.isDirectory() ? DIR : OTHER;
+            if (type != NONE && event.kind() != ENTRY_DELETE)
+                types.put(path(), type);
+        }
+        return attr;
+    }
+
+    /** 是否为文件 */
+    public
+    boolean isFile() { return type() == FILE; }
+
+    /** 是否为目录 */
+    public
+    boolean isDirectory() { return type() == DIR; }
+
+    /** 路径是否存在 */
+    public
+    boolean exists() { return type() != NONE; }
+
+    // 获取类型，新建事件总是读取属性，其余优先使用缓存
+    private
+    int type() {
+        if (type == UNKNOWN && event.kind() != ENTRY_CREATE)
+            type = types.get(path());
+        if (type == UNKNOWN)
+            attributes();
+        return type;
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    /**
+     * <h2>类型缓存.</h2>
+     * 每个监听服务一个，记录路径的类型，短时间后过期
+     *
+     * @author fybug
+     * @version 0.0.1
+     * @since FileAttr 0.0.1
+     */
+    static final
+    class Types {
+        /** 过期时间，纳秒 */
+        static final long TTL = TimeUnit.SECONDS.toNanos(2);
+        /** 缓存的最大数量 */
+        static final int MAX = 8192;
+
+        // 路径 -> 类型
+        private final Map<Path, Entry> map = new ConcurrentHashMap<>();
+
+        /** 获取未过期的类型，没有为 {@link #UNKNOWN} */
+        int get(Path path) {
+            if (map.isEmpty())
+                return UNKNOWN;
+            var entry = map.get(path);
+            if (entry == null)
+                return UNKNOWN;
+            if (System.nanoTime() - entry.time > TTL) {
+                map.remove(path, entry);
+                return UNKNOWN;
+            }
+            return entry.type;
+        }
+
+        /** 记录类型 */
+        void put(Path path, int type) {
+            if (map.size() >= MAX) {
+                // 先清除过期的，依旧超出则全部清除
+                var now = System.nanoTime();
+                map.values().removeIf(e -> now - e.time > TTL);
+                if (map.size() >= MAX)
+                    map.clear();
+            }
+            map.put(path, new Entry(type, System.nanoTime()));
+        }
+
+        /** 根据监听键的事件清除失效的类型，目录由处理程序解析，被移动的目录使用移动后的路径 */
+        void update(WaServer<?> server, WatchKey key, List<WatchEvent<?>> events) {
+            if (map.isEmpty())
+                return;
+            Path dir = null;
+            for ( int i = 0, size = events.size(); i < size; i++ ) {
+                var event = events.get(i);
+                if (event.kind() == OVERFLOW) {
+                    // 可能有遗漏的删除事件
+                    map.clear();
+                    return;
+                }
+                if (event.kind() == ENTRY_DELETE) {
+                    if (dir == null)
+                        dir = server.keyToDir(key);
+                    map.remove(dir.resolve((Path) event.context()));
+                }
+            }
+        }
+
+        void clear() { map.clear(); }
+
+        // 缓存项
+        private static final
+        class Entry {
+            final int type;
+            final long time;
+
+            Entry(int type, long time) {
+                this.type = type;
+                this.time = time;
+            }
+        }
+    }
+}
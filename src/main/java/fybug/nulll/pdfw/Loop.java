@@ -7,16 +7,25 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import fybug.nulll.pdconcurrent.SyLock;
 import fybug.nulll.pdfw.loopex.LoopState;
 
 import static fybug.nulll.pdfw.loopex.LoopState.WATCH_CLOSE;
 import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
+import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 /**
  * <h2>处理程序.</h2>
@@ -24,14 +33,30 @@ import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
  * 可以加入多个回调接口，按顺序进行触发<br/>
  * 可添加默认触发的回调，在没有声明回调的 {@link WatchEvent.Kind} 中使用<br/>
  * 根据回调接口返回的 {@link LoopState} 声明当前状态，只有 {@link LoopState#WATCH_NEXT} 状态才会继续处理<br/>
+ * 可设置合并窗口，窗口内同一路径的事件合并为一次回调<br/>
+ * 可添加批量回调，一次接收监听键一次触发的全部事件<br/>
+ * 过滤和回调可通过 {@link FileAttr} 共用事件路径的属性<br/>
+ * 可设置包含和排除的路径规则，在其他处理之前过滤事件<br/>
+ * 可开启内容变化检查，过滤内容没有变化的修改事件<br/>
+ * 可开启写入完成事件，文件停止写入一段时间后触发一次<br/>
+ * 可创建事件发布者，以 {@link java.util.concurrent.Flow} 的方式按需接收事件<br/>
+ * 运行情况记录在 {@link #stats()} 中，同时计入所属的监听服务
  * <br/><br/>
- * 使用 {@link #runback(WatchKey, WatchEvent)} 触发回调链<br/>
+ * 使用 {@link #runback(WatchKey, List)} 触发回调链<br/>
  * 使用 {@link #addCall(WatchEvent.Kind, StateBack...)} 添加回调<br/>
- * 使用 {@link #addDefaCall(StateBack...)} 添加默认回调
+ * 使用 {@link #addDefaCall(StateBack...)} 添加默认回调<br/>
+ * 使用 {@link #addBatchCall(WatchEvent.Kind, BatchStateBack...)} 添加批量回调<br/>
+ * 使用 {@link #addDefaBatchCall(BatchStateBack...)} 添加默认批量回调<br/>
+ * 使用 {@link #include(String...)} 和 {@link #exclude(String...)} 设置路径过滤<br/>
+ * 使用 {@link #checkContent(int)} 开启内容变化检查<br/>
+ * 使用 {@link #stable(long)} 开启写入完成事件<br/>
+ * 使用 {@link #publisher(int, boolean)} 创建事件发布者<br/>
+ * 使用 {@link #debounce(long)} 设置合并窗口
  *
  * @author fybug
  * @version 0.0.1
  * @see StateBack
+ * @see BatchStateBack
  * @since PDFileWatch 0.0.1
  */
 public abstract
@@ -42,13 +67,34 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     /** 锁 */
     protected final SyLock LOCK = SyLock.newObjLock();
 
-    // 回调链映射
-    private final Map<WatchEvent.Kind<Path>, List<StateBack>> CALL_BACK = new HashMap<>(3, 1.0f);
-    // 默认回调链
-    private final List<StateBack> DEFA_CALL_BACK = new ArrayList<>();
+    // 回调表，修改时整体替换，读取无需加锁
+    private volatile CallTable<StateBack> CALL_BACK = new CallTable<>(new StateBack[0]);
+    // 批量回调表，修改时整体替换，读取无需加锁
+    private volatile CallTable<BatchStateBack> BATCH_BACK =
+            new CallTable<>(new BatchStateBack[0]);
+
+    // 路径过滤，修改时整体替换
+    private volatile PathFilter FILTER = PathFilter.EMPTY;
+
+    // 内容变化检查，未开启为 null
+    private volatile ContentCheck CONTENT = null;
+
+    // 文件静默计时，未开启为 null
+    private volatile StableWheel STABLE = null;
+
+    // 合并窗口，毫秒
+    private volatile long debounce = 0;
+    // 等待合并的事件
+    private final Map<Merge, Merge> MERGE = new ConcurrentHashMap<>();
 
     // 是否关闭
-    private boolean close = false;
+    private volatile boolean close = false;
+
+    // 事件发布者，修改时整体替换
+    private volatile EventPublisher[] PUBS = new EventPublisher[0];
+
+    // 统计
+    private final WatchStats STATS = new WatchStats();
 
     //----------------------------------------------------------------------------------------------
 
@@ -71,9 +117,9 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     T addCall(@NotNull WatchEvent.Kind<Path> kind, @NotNull StateBack... runnable) {
         LOCK.write(() -> {
             if (!isClose())
-                checkMap(kind).addAll(Arrays.asList(runnable));
+                CALL_BACK = CALL_BACK.add(kind, runnable);
         });
-        return (T) this;
+        return self();
     }
 
     /**
@@ -88,25 +134,179 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     T addDefaCall(@NotNull StateBack... runnable) {
         LOCK.write(() -> {
             if (!isClose())
-                DEFA_CALL_BACK.addAll(Arrays.asList(runnable));
+                CALL_BACK = CALL_BACK.addDefa(runnable);
         });
-        return (T) this;
+        return self();
     }
 
-    //---------------------------------------
+    /**
+     * 追加批量处理回调
+     *
+     * @param kind     处理的事件
+     * @param runnable 批量处理回调
+     *
+     * @return this
+     *
+     * @see BatchStateBack
+     */
+    @NotNull
+    public
+    T addBatchCall(@NotNull WatchEvent.Kind<Path> kind, @NotNull BatchStateBack... runnable) {
+        LOCK.write(() -> {
+            if (!isClose())
+                BATCH_BACK = BATCH_BACK.add(kind, runnable);
+        });
+        return self();
+    }
 
-    // 检查当前映射
-    private
-    List<StateBack> checkMap(WatchEvent.Kind<Path> kind) {
-        List<StateBack> list;
-        // 检查是否已加载
-        if (!CALL_BACK.containsKey(kind))
-            CALL_BACK.put(kind, list = new ArrayList<>());
-        else
-            list = CALL_BACK.get(kind);
-        return list;
+    /**
+     * 追加默认批量回调
+     *
+     * @param runnable 批量处理回调
+     *
+     * @return this
+     *
+     * @see BatchStateBack
+     */
+    @NotNull
+    public
+    T addDefaBatchCall(@NotNull BatchStateBack... runnable) {
+        LOCK.write(() -> {
+            if (!isClose())
+                BATCH_BACK = BATCH_BACK.addDefa(runnable);
+        });
+        return self();
+    }
+
+    /**
+     * 追加包含规则
+     * <p>
+     * 设置后只处理符合任一包含规则的路径，在其他过滤和读取属性之前检查，不影响处理程序内部的记录<br/>
+     * 规则使用 {@code glob:} 或 {@code regex:} 开头，没有前缀视为 glob，
+     * 匹配相对监听根目录的路径，不包含 {@code /} 的 glob 匹配任意层级中的名称
+     *
+     * @param patterns 规则
+     *
+     * @return this
+     *
+     * @see #exclude(String...)
+     */
+    @NotNull
+    public
+    T include(@NotNull String... patterns) {
+        LOCK.write(() -> FILTER = FILTER.include(patterns));
+        return self();
+    }
+
+    /**
+     * 追加排除规则
+     * <p>
+     * 符合任一排除规则的路径不做处理，如 {@code *.tmp}、{@code .git/**}，规则格式同
+     * {@link #include(String...)}
+     *
+     * @param patterns 规则
+     *
+     * @return this
+     */
+    @NotNull
+    public
+    T exclude(@NotNull String... patterns) {
+        LOCK.write(() -> FILTER = FILTER.exclude(patterns));
+        return self();
+    }
+
+    /**
+     * 开启内容变化检查
+     * <p>
+     * 开启后修改事件只在文件内容变化时处理，只修改了属性或写入相同内容的修改事件会被过滤<br/>
+     * 需要读取文件计算摘要，记录超过上限时淘汰最久未使用的记录，没有记录的文件视为有变化
+     *
+     * @param capacity 记录的文件数量上限，小于 1 则关闭
+     *
+     * @return this
+     */
+    @NotNull
+    public
+    T checkContent(int capacity) {
+        CONTENT = capacity < 1 ? null : new ContentCheck(capacity);
+        return self();
+    }
+
+    /**
+     * 开启写入完成事件
+     * <p>
+     * 文件在静默时间内没有新的新建或修改事件后触发一次 {@link PathKind#ENTRY_STABLE}，
+     * 使用 {@link #addCall(WatchEvent.Kind, StateBack...)} 添加该类型的回调<br/>
+     * 需要监听新建和修改事件，删除的文件不会触发
+     *
+     * @param millis 静默时间，毫秒，小于 1 则关闭
+     *
+     * @return this
+     */
+    @NotNull
+    public
+    T stable(long millis) {
+        LOCK.write(() -> {
+            if (STABLE != null)
+                STABLE.close();
+            STABLE = millis < 1 || isClose() ? null : new StableWheel(this, millis);
+        });
+        return self();
+    }
+
+    /**
+     * 创建事件发布者
+     * <p>
+     * 通过过滤的事件在交给回调的同时发布给订阅者，按订阅者的请求数量在公共线程池中发送，
+     * 处理程序关闭时结束订阅
+     *
+     * @param buffer   每个订阅者的缓冲区大小
+     * @param conflate 缓冲区满后是否合并同一路径的事件，否则丢弃新的事件
+     *
+     * @return 发布者，关闭后不再发布
+     *
+     * @see EventPublisher
+     */
+    @NotNull
+    public
+    EventPublisher publisher(int buffer, boolean conflate) {
+        var pub = new EventPublisher(buffer, conflate, ForkJoinPool.commonPool());
+        LOCK.write(() -> {
+            if (isClose()) {
+                pub.close();
+            } else {
+                var n = Arrays.copyOf(PUBS, PUBS.length + 1);
+                n[PUBS.length] = pub;
+                PUBS = n;
+            }
+        });
+        return pub;
+    }
+
+    /**
+     * 设置合并窗口
+     * <p>
+     * 同一路径的事件在首个事件到达后的窗口内合并为一次回调，
+     * 合并后的事件为 {@link PathEvent}，次数为窗口内的事件次数之和，类型为最后一次事件的类型，
+     * 但新建后的修改依旧视为新建<br/>
+     * 窗口结束后的回调和该监听键的事件在同一线程中处理
+     *
+     * @param millis 窗口长度，毫秒，小于 1 则不合并
+     *
+     * @return this
+     */
+    @NotNull
+    public
+    T debounce(long millis) {
+        debounce = Math.max(millis, 0);
+        return self();
     }
 
+    // 返回实际类型的 this
+    @SuppressWarnings( "unchecked" )
+    private
+    T self() { return (T) this; }
+
     //----------------------------------------------------------------------------------------------
 
     /** 校验事件是否重复 */
@@ -114,33 +314,296 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     boolean runCheck(WatchKey key, WatchEvent<?> event, WatchEvent.Kind<?> kind)
     { return event.count() < 2; }
 
-    /** 运行回调 */
+    /** 根据监控键获取路径 */
     protected abstract
-    LoopState runcall(WatchKey key, WatchEvent<?> event, Stream<StateBack> stream);
+    String keyToPath(WatchKey key);
+
+    /**
+     * 根据监控键获取事件所在的目录
+     * <p>
+     * 默认为注册时的路径，目录被移动后需重写
+     */
+    @NotNull
+    protected
+    Path keyToDir(WatchKey key) { return (Path) key.watchable(); }
 
-    /** 开始处理 */
-    final
-    LoopState runback(WatchKey key, WatchEvent<?> event) {
-        if (LOCK.read(() -> close))
+    /**
+     * 获取用于路径过滤的相对路径
+     * <p>
+     * 默认为事件的相对路径
+     *
+     * @param path    监听键对应的路径
+     * @param context 事件的相对路径
+     */
+    @NotNull
+    protected
+    String relative(String path, Path context) { return context.toString(); }
+
+    /**
+     * 获取事件路径的属性
+     * <p>
+     * 同一个事件在过滤和回调中共用，只读取一次
+     *
+     * @see FileAttr
+     */
+    @NotNull
+    protected final
+    FileAttr attr(WatchKey key, WatchEvent<?> event)
+    { return FileAttr.of(this, key, event); }
+
+    /**
+     * 记录事件
+     * <p>
+     * 每个事件在路径过滤和 {@link #runCheck(WatchKey, WatchEvent, WatchEvent.Kind)} 之前调用，
+     * 不受过滤规则、合并窗口和回调状态影响，用于处理程序内部的记录，默认忽略
+     */
+    protected
+    void track(WatchKey key, WatchEvent<?> event) {}
+
+    /**
+     * 系统事件溢出
+     * <p>
+     * 该监听键有事件被系统或分发队列丢弃，默认触发 {@link PathKind#ENTRY_OVERFLOW}
+     */
+    protected
+    void overflow(WatchKey key) {
+        var event = new PathEvent(PathKind.ENTRY_OVERFLOW, 1, Path.of(""));
+        var path = keyToPath(key);
+        attr(key, event);
+        if (fire(CALL_BACK.get(PathKind.ENTRY_OVERFLOW), event, path) != WATCH_CLOSE)
+            fireBatch(BATCH_BACK, List.of(event), path);
+    }
+
+    /** 开始处理监听键一次触发的全部事件 */
+    protected final
+    LoopState runback(WatchKey key, List<WatchEvent<?>> events) {
+        if (close)
             return WATCH_CLOSE;
+        STATS.event(events.size());
+
+        // 当前回调表
+        var calls = CALL_BACK;
+        var batchs = BATCH_BACK;
+        // 需要批量处理的事件
+        var batch = batchs.isEmpty() ? null : new ArrayList<WatchEvent<?>>(events.size());
+        // 合并窗口
+        var window = debounce;
+        // 内容检查
+        var content = CONTENT;
+        // 静默计时
+        var stable = STABLE;
+        // 路径过滤
+        var filter = FILTER;
+        if (filter.isEmpty())
+            filter = null;
+        // 监听键对应的路径，每次触发只获取一次
+        String path = null;
+        var state = WATCH_NEXT;
+
+        for ( int i = 0, size = events.size(); i < size; i++ ) {
+            // 处理中被关闭
+            if (close)
+                return WATCH_CLOSE;
+            var event = events.get(i);
+            // 当前事件类型
+            var kind = event.kind();
+            // 溢出事件没有路径
+            if (kind == OVERFLOW) {
+                overflow(key);
+                continue;
+            }
+            track(key, event);
+            if (filter != null) {
+                if (path == null)
+                    path = keyToPath(key);
+                if (!filter.test(relative(path, (Path) event.context()))) {
+                    STATS.filtered();
+                    parent.STATS.filtered();
+                    continue;
+                }
+            }
+            var attr = attr(key, event);
+            var pass = runCheck(key, event, kind);
+            // 计时中的文件被过滤的事件也会重新计时
+            if (stable != null)
+                stableTouch(stable, key, (Path) event.context(), kind, pass);
+            if (!pass || (content != null && !contentChanged(content, attr, kind))) {
+                STATS.filtered();
+                parent.STATS.filtered();
+                continue;
+            }
+
+            // 合并事件
+            if (window > 0) {
+                merge(key, event, window);
+                continue;
+            }
+            if (batch != null)
+                batch.add(event);
+            if (path == null)
+                path = keyToPath(key);
+            // 调取回调
+            if ((state = fire(calls.get(kind), event, path)) == WATCH_CLOSE)
+                return state;
+        }
+
+        if (batch != null && !batch.isEmpty())
+            state = fireBatch(batchs, batch, path == null ? keyToPath(key) : path);
+        return state;
+    }
 
-        // 当前事件类型
-        var kind = event.kind();
-        if (!runCheck(key, event, kind))
-            return WATCH_DOME;
-
-        // 当前状态
-        var state =
-                // 运行处理事件
-                runcall(key, event, LOCK.read(() -> CALL_BACK.getOrDefault(kind, DEFA_CALL_BACK)
-                                                             .stream()));
-        if (state == WATCH_CLOSE)
-            close();
+    // 检查内容是否变化，新建和删除时清除记录
+    private static
+    boolean contentChanged(ContentCheck content, FileAttr attr, WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_MODIFY)
+            return content.changed(attr.path(), attr.attributes());
+        if (kind == ENTRY_CREATE || kind == ENTRY_DELETE)
+            content.remove(attr.path());
+        return true;
+    }
+
+    // 更新静默计时
+    private static
+    void stableTouch(StableWheel stable, WatchKey key, Path context, WatchEvent.Kind<?> kind,
+                     boolean add)
+    {
+        if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY)
+            stable.touch(key, context, add);
+        else if (kind == ENTRY_DELETE)
+            stable.remove(key, context);
+    }
+
+    /** 文件写入完成，触发 {@link PathKind#ENTRY_STABLE} */
+    void stable(WatchKey key, Path context) {
+        if (isClose())
+            return;
+        var event = new PathEvent(PathKind.ENTRY_STABLE, 1, context);
+        var path = keyToPath(key);
+        attr(key, event);
+        if (fire(CALL_BACK.get(PathKind.ENTRY_STABLE), event, path) != WATCH_CLOSE)
+            fireBatch(BATCH_BACK, List.of(event), path);
+    }
+
+    // 运行回调链
+    private
+    LoopState fire(StateBack[] chain, WatchEvent<?> event, String path) {
+        publish(event, path);
+        if (chain.length == 0)
+            return WATCH_NEXT;
+        var state = WATCH_NEXT;
+        var start = System.nanoTime();
+        int calls = 0;
+        for ( StateBack back : chain ) {
+            calls++;
+            state = back.apply(event, path);
+            if (state == WATCH_DOME)
+                break;
+            if (state == WATCH_CLOSE) {
+                close();
+                break;
+            }
+        }
+        record(event.kind(), calls, state, System.nanoTime() - start);
+        return state;
+    }
+
+    // 运行批量回调链
+    private
+    LoopState fireBatch(CallTable<BatchStateBack> batchs, List<WatchEvent<?>> events, String path) {
+        // 按类型分配事件，没有声明批量回调的类型交给默认批量回调
+        var chains = new LinkedHashMap<BatchStateBack[], List<WatchEvent<?>>>(4, 1.0f);
+        for ( WatchEvent<?> event : events ) {
+            var chain = batchs.get(event.kind());
+            if (chain.length > 0)
+                chains.computeIfAbsent(chain, k -> new ArrayList<>()).add(event);
+        }
+
+        var state = WATCH_NEXT;
+        for ( var e : chains.entrySet() ) {
+            var list = Collections.unmodifiableList(e.getValue());
+            var start = System.nanoTime();
+            int calls = 0;
+            for ( BatchStateBack back : e.getKey() ) {
+                calls++;
+                state = back.apply(list, path);
+                if (state == WATCH_DOME || state == WATCH_CLOSE)
+                    break;
+            }
+            record(list.get(0).kind(), calls, state, System.nanoTime() - start);
+            if (state == WATCH_CLOSE) {
+                close();
+                break;
+            }
+        }
         return state;
     }
 
+    // 发布给处理程序和服务的订阅者
+    private
+    void publish(WatchEvent<?> event, String path) {
+        for ( EventPublisher pub : PUBS )
+            pub.offer(event, path);
+        for ( EventPublisher pub : parent.PUBS )
+            pub.offer(event, path);
+    }
+
+    // 记录回调链的统计
+    private
+    void record(WatchEvent.Kind<?> kind, int calls, LoopState state, long nanos) {
+        var server = parent.STATS;
+        STATS.call(kind, calls);
+        server.call(kind, calls);
+        STATS.state(state);
+        server.state(state);
+        STATS.time(nanos);
+        server.time(nanos);
+    }
+
+    //---------------------------------------
+
+    // 合并到窗口中，首个事件开启定时
+    private
+    void merge(WatchKey key, WatchEvent<?> event, long window) {
+        var mark = new Merge(key, (Path) event.context());
+        var merge = MERGE.compute(mark, (k, v) -> {
+            if (v == null)
+                v = k;
+            v.add(event);
+            return v;
+        });
+        if (merge == mark)
+            parent.timer().schedule(() -> parent.later(key, () -> flush(mark)), window,
+                                    TimeUnit.MILLISECONDS);
+    }
+
+    // 窗口结束，在监听键的处理线程中触发合并后的事件
+    private
+    void flush(Merge mark) {
+        var merge = MERGE.remove(mark);
+        if (merge == null || isClose())
+            return;
+        try {
+            var event = new PathEvent(merge.kind, merge.count, merge.context);
+            var path = keyToPath(merge.key);
+            attr(merge.key, event);
+            if (fire(CALL_BACK.get(event.kind()), event, path) != WATCH_CLOSE)
+                fireBatch(BATCH_BACK, List.of(event), path);
+        } catch ( RuntimeException e ) {
+            e.printStackTrace();
+        }
+    }
+
     //----------------------------------------------------------------------------------------------
 
+    /**
+     * 获取该处理程序的统计
+     *
+     * @see WatchStats
+     */
+    @NotNull
+    public
+    WatchStats.Snapshot stats() { return STATS.snapshot(); }
+
     /** 获取监听的路径 */
     public
     String getPath() {return toPath();}
@@ -165,10 +628,19 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     void close() {
         LOCK.write(() -> {
             if (!isClose()) {
+                close = true;
                 // gc callback
-                CALL_BACK.values().forEach(List::clear);
-                CALL_BACK.clear();
-                DEFA_CALL_BACK.clear();
+                CALL_BACK = new CallTable<>(new StateBack[0]);
+                BATCH_BACK = new CallTable<>(new BatchStateBack[0]);
+                MERGE.clear();
+                CONTENT = null;
+                for ( EventPublisher pub : PUBS )
+                    pub.close();
+                PUBS = new EventPublisher[0];
+                if (STABLE != null) {
+                    STABLE.close();
+                    STABLE = null;
+                }
                 // sub close
                 close0();
             }
@@ -178,4 +650,47 @@ class Loop<W extends WaServer<T>, T extends Loop<W, T>> implements Closeable {
     /** 关闭操作 */
     protected abstract
     void close0();
-}
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 合并中的事件，使用监听键和相对路径区分
+    private static
+    class Merge {
+        final WatchKey key;
+        final Path context;
+        // 合并后的类型
+        WatchEvent.Kind<Path> kind;
+        // 合并后的次数
+        int count = 0;
+
+        Merge(WatchKey key, Path context) {
+            this.key = key;
+            this.context = context;
+        }
+
+        // 合并事件
+        @SuppressWarnings( "unchecked" )
+        void add(WatchEvent<?> event) {
+            var k = (WatchEvent.Kind<Path>) event.kind();
+            // 新建后的修改依旧是新建
+            if (!(kind == ENTRY_CREATE && k == ENTRY_MODIFY))
+                kind = k;
+            count += event.count();
+        }
+
+        @Override
+        public
+        boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Merge))
+                return false;
+            var m = (Merge) o;
+            return key == m.key && Objects.equals(context, m.context);
+        }
+
+        @Override
+        public
+        int hashCode() { return System.identityHashCode(key) * 31 + Objects.hashCode(context); }
+    }
+}
\ No newline at end of file
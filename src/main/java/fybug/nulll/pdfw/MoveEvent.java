@@ -0,0 +1,45 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * <h2>重命名事件.</h2>
+ * 类型为 {@link PathKind#ENTRY_MOVE}，{@link #context()} 为新的名称，{@link #from()} 为原来的名称<br/>
+ * 两个名称都相对于同一个监听目录
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see PathKind#ENTRY_MOVE
+ * @since PDFileWatch 0.0.1
+ */
+public
+class MoveEvent extends PathEvent {
+    // 原来的路径
+    private final Path from;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 构造重命名事件
+     *
+     * @param from    原来相对于监听目录的路径
+     * @param context 新的相对于监听目录的路径
+     */
+    public
+    MoveEvent(@NotNull Path from, @NotNull Path context) {
+        super(PathKind.ENTRY_MOVE, 1, context);
+        this.from = from;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 原来相对于监听目录的路径 */
+    @NotNull
+    public
+    Path from() { return from; }
+
+    @Override
+    public
+    String toString() { return "MoveEvent{" + from + " -> " + context() + '}'; }
+}
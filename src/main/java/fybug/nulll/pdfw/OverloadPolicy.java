@@ -0,0 +1,29 @@
+package fybug.nulll.pdfw;
+import java.nio.file.StandardWatchEventKinds;
+
+/**
+ * <h2>分发队列满时的处理方式.</h2>
+ * 开启工作线程后每个工作线程有一个待处理队列，限制了大小后队列满时按该方式处理新的事件<br/>
+ * 每种方式的触发次数记录在 {@link WatchStats} 中
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see WaServer#queue(int, OverloadPolicy)
+ * @since PDFileWatch 0.0.1
+ */
+public
+enum OverloadPolicy {
+    /** 阻塞监听线程直到队列有空位，期间的事件积压在系统中，可能导致系统事件溢出 */
+    BLOCK,
+    /** 丢弃队列中最早的事件 */
+    DROP_OLDEST,
+    /** 同一监听键下同一路径的事件只保留最后一个，合并后仍然不足时丢弃最早的事件 */
+    CONFLATE,
+    /**
+     * 将队列中的事件替换为每个监听键一个 {@link StandardWatchEventKinds#OVERFLOW}，
+     * 只通知目录发生了变化<br/>
+     * 处理程序收到后触发 {@link PathKind#ENTRY_OVERFLOW}，
+     * 开启了溢出恢复的 {@link fybug.nulll.pdfw.watch.DepthWatch} 则重新扫描并补发遗漏的事件
+     */
+    DEGRADE
+}
@@ -0,0 +1,59 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * <h2>合成事件.</h2>
+ * 由该库自行生成的 {@link WatchEvent}，用于合并后的事件或重新扫描得出的事件<br/>
+ * 和系统事件一样传入 {@link StateBack}
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop
+ * @since PDFileWatch 0.0.1
+ */
+public
+class PathEvent implements WatchEvent<Path> {
+    // 事件类型
+    private final Kind<Path> kind;
+    // 事件次数
+    private final int count;
+    // 相对路径
+    private final Path context;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 构造合成事件
+     *
+     * @param kind    事件类型
+     * @param count   事件次数
+     * @param context 相对于监听目录的路径
+     */
+    public
+    PathEvent(@NotNull Kind<Path> kind, int count, @NotNull Path context) {
+        this.kind = kind;
+        this.count = count;
+        this.context = context;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    Kind<Path> kind() { return kind; }
+
+    @Override
+    public
+    int count() { return count; }
+
+    @Override
+    public
+    Path context() { return context; }
+
+    @Override
+    public
+    String toString() { return "PathEvent{" + kind + ", " + count + ", " + context + '}'; }
+}
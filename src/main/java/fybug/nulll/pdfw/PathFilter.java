@@ -0,0 +1,173 @@
+package fybug.nulll.pdfw;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <h2>路径过滤.</h2>
+ * 将多个包含和排除规则分别编译为一个正则，匹配时各只运行一次<br/>
+ * 不可变，修改时生成新的过滤，由 {@link Loop} 整体替换发布
+ * <br/><br/>
+ * 规则的格式和 {@link java.nio.file.FileSystem#getPathMatcher(String)} 相同，
+ * 使用 {@code glob:} 或 {@code regex:} 开头，没有前缀视为 {@code glob:}<br/>
+ * 匹配的路径为相对监听根目录的路径，使用 {@code /} 分隔<br/>
+ * 不包含 {@code /} 的 glob 规则匹配任意层级中的名称，如 {@code *.tmp}；
+ * 包含 {@code /} 的匹配整个相对路径，如 {@code .git/**}
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop#include(String...)
+ * @see Loop#exclude(String...)
+ * @since PDFileWatch 0.0.1
+ */
+final
+class PathFilter {
+    /** 没有规则 */
+    static final PathFilter EMPTY = new PathFilter(List.of(), List.of());
+
+    // 包含规则转换后的正则
+    private final List<String> includes;
+    // 排除规则转换后的正则
+    private final List<String> excludes;
+    // 编译后的规则，没有为 null
+    private final Pattern include, exclude;
+
+    //----------------------------------------------------------------------------------------------
+
+    private
+    PathFilter(List<String> includes, List<String> excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+        include = compile(includes);
+        exclude = compile(excludes);
+    }
+
+    /** 追加包含规则 */
+    PathFilter include(String... patterns)
+    { return new PathFilter(add(includes, patterns), excludes); }
+
+    /** 追加排除规则 */
+    PathFilter exclude(String... patterns)
+    { return new PathFilter(includes, add(excludes, patterns)); }
+
+    /** 是否没有规则 */
+    boolean isEmpty() { return include == null && exclude == null; }
+
+    /**
+     * 检查路径是否通过
+     *
+     * @param path 相对路径，使用 {@code /} 分隔
+     *
+     * @return 符合包含规则且不符合排除规则
+     */
+    boolean test(CharSequence path) {
+        if (include != null && !include.matcher(path).matches())
+            return false;
+        return exclude == null || !exclude.matcher(path).matches();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 合并为一个正则
+    private static
+    Pattern compile(List<String> regexs) {
+        if (regexs.isEmpty())
+            return null;
+        return Pattern.compile(String.join("|", regexs));
+    }
+
+    // 追加规则
+    private static
+    List<String> add(List<String> list, String[] patterns) {
+        var now = new ArrayList<>(list);
+        for ( String pattern : patterns )
+            now.add("(?:" + toRegex(pattern) + ")");
+        return List.copyOf(now);
+    }
+
+    /** 转换为正则 */
+    static
+    String toRegex(String pattern) {
+        if (pattern.startsWith("regex:")) {
+            var regex = pattern.substring(6);
+            // 检查语法
+            Pattern.compile(regex);
+            return regex;
+        }
+        if (pattern.startsWith("glob:"))
+            pattern = pattern.substring(5);
+        var regex = globToRegex(pattern);
+        // 只匹配名称
+        return pattern.indexOf('/') < 0 ? "(?:.*/)?" + regex : regex;
+    }
+
+    // 转换 glob
+    private static
+    String globToRegex(String glob) {
+        var sb = new StringBuilder(glob.length() + 16);
+        boolean group = false;
+        for ( int i = 0; i < glob.length(); i++ ) {
+            char c = glob.charAt(i);
+            switch ( c ) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        // **/ 可以匹配零层目录
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            sb.append("(?:.*/)?");
+                        } else {
+                            sb.append(".*");
+                        }
+                    } else {
+                        sb.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    sb.append("[^/]");
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 1);
+                    if (end < 0)
+                        throw new IllegalArgumentException("Missing ']' in glob: " + glob);
+                    var set = glob.substring(i + 1, end);
+                    sb.append('[');
+                    if (set.startsWith("!")) {
+                        sb.append('^');
+                        set = set.substring(1);
+                    }
+                    sb.append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = end;
+                    break;
+                case '{':
+                    if (group)
+                        throw new IllegalArgumentException("Nested '{' in glob: " + glob);
+                    group = true;
+                    sb.append("(?:");
+                    break;
+                case '}':
+                    if (group) {
+                        group = false;
+                        sb.append(')');
+                    } else {
+                        sb.append("\\}");
+                    }
+                    break;
+                case ',':
+                    sb.append(group ? "|" : ",");
+                    break;
+                case '\\':
+                    if (++i < glob.length())
+                        sb.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                    break;
+                default:
+                    if ("().+^$|".indexOf(c) >= 0)
+                        sb.append('\\');
+                    sb.append(c);
+            }
+        }
+        if (group)
+            throw new IllegalArgumentException("Missing '}' in glob: " + glob);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * <h2>合成事件类型.</h2>
+ * 由该库自行生成的事件类型，系统不会产生，不能用于注册监听<br/>
+ * 可和系统事件类型一样用于 {@link Loop#addCall(WatchEvent.Kind, StateBack...)}
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see PathEvent
+ * @since PDFileWatch 0.0.1
+ */
+public final
+class PathKind implements WatchEvent.Kind<Path> {
+    /**
+     * 文件写入完成
+     * <p>
+     * 文件在静默时间内没有新的新建或修改事件后触发一次，需开启 {@link Loop#stable(long)}
+     */
+    public static final PathKind ENTRY_STABLE = new PathKind("ENTRY_STABLE");
+    /**
+     * 目录被重命名
+     * <p>
+     * 同一目录下的删除和新建事件为同一个目录时合并为该事件，事件为 {@link MoveEvent}，
+     * 需开启 {@link fybug.nulll.pdfw.watch.DepthWatch#detectMoves(long)}
+     */
+    public static final PathKind ENTRY_MOVE = new PathKind("ENTRY_MOVE");
+    /**
+     * 目录有事件被丢弃
+     * <p>
+     * 系统事件溢出或分发队列按 {@link OverloadPolicy#DEGRADE} 处理后触发，路径为监听的目录，
+     * 需由回调自行重新扫描该目录<br/>
+     * 开启了溢出恢复的 {@link fybug.nulll.pdfw.watch.DepthWatch} 会补发遗漏的事件，不触发该事件
+     */
+    public static final PathKind ENTRY_OVERFLOW = new PathKind("ENTRY_OVERFLOW");
+
+    // 类型名称
+    private final String name;
+
+    //----------------------------------------------------------------------------------------------
+
+    private
+    PathKind(String name) { this.name = name; }
+
+    //----------------------------------------------------------------------------------------------
+
+    @NotNull
+    @Override
+    public
+    String name() { return name; }
+
+    @NotNull
+    @Override
+    public
+    Class<Path> type() { return Path.class; }
+
+    @Override
+    public
+    String toString() { return name; }
+}
@@ -0,0 +1,187 @@
+package fybug.nulll.pdfw;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>文件静默计时.</h2>
+ * 使用时间轮记录正在写入的文件，文件在静默时间内没有新事件后触发 {@link PathKind#ENTRY_STABLE}
+ * <br/><br/>
+ * 时间轮的一圈不小于两倍静默时间，所有文件的到期时间都在一圈内，无需记录圈数<br/>
+ * 新事件只更新文件的到期时间，不移动位置，到达所在位置时未到期再放入新的位置，
+ * 持续写入的文件每个静默时间只移动一次<br/>
+ * 时间轮只在定时器中计时，到期的回调交给监听键的处理线程
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see Loop#stable(long)
+ * @since PDFileWatch 0.0.1
+ */
+final
+class StableWheel {
+    /** 时间轮的格数 */
+    static final int SLOTS = 128;
+    /** 每格的最小时长，毫秒 */
+    static final long MIN_TICK = 10;
+
+    // 触发的处理程序
+    private final Loop<?, ?> loop;
+    // 静默时间，纳秒
+    private final long quiet;
+    // 每格时长，纳秒
+    private final long tick;
+    // 开始的时间
+    private final long start = System.nanoTime();
+    // 时间轮，由 this 保护
+    private final List<List<Entry>> slots = new ArrayList<>(SLOTS);
+    // 已处理到的格数，由 this 保护
+    private long done = 0;
+    // 正在计时的文件
+    private final Map<Entry, Entry> entries = new ConcurrentHashMap<>();
+    // 定时任务
+    private final ScheduledFuture<?> task;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * @param loop   触发的处理程序
+     * @param millis 静默时间，毫秒
+     */
+    StableWheel(Loop<?, ?> loop, long millis) {
+        this.loop = loop;
+        quiet = TimeUnit.MILLISECONDS.toNanos(millis);
+        var t = Math.max(millis * 2 / SLOTS, MIN_TICK);
+        tick = TimeUnit.MILLISECONDS.toNanos(t);
+        for ( int i = 0; i < SLOTS; i++ )
+            slots.add(new ArrayList<>());
+        task = loop.parent.timer().scheduleAtFixedRate(this::tick, t, t, TimeUnit.MILLISECONDS);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 文件有新事件
+     *
+     * @param key     监听键
+     * @param context 相对路径
+     * @param add     未在计时中时是否开始计时
+     */
+    void touch(WatchKey key, Path context, boolean add) {
+        var mark = new Entry(key, context);
+        var entry = entries.get(mark);
+        if (entry != null) {
+            // 和到期移除互斥，已到期移除时按未在计时中处理
+            synchronized ( entry ){
+                if (entries.get(mark) == entry) {
+                    entry.deadline = System.nanoTime() + quiet;
+                    return;
+                }
+            }
+        }
+        if (add) {
+            mark.deadline = System.nanoTime() + quiet;
+            if (entries.putIfAbsent(mark, mark) == null)
+                put(mark);
+            else
+                touch(key, context, false);
+        }
+    }
+
+    /** 文件被删除，停止计时 */
+    void remove(WatchKey key, Path context) { entries.remove(new Entry(key, context)); }
+
+    // 放入到期时间对应的格
+    private synchronized
+    void put(Entry entry) {
+        // 不早于下一格
+        var at = Math.max((entry.deadline - start + tick - 1) / tick, done + 1);
+        slots.get((int) (at % SLOTS)).add(entry);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 处理到期的格
+    private
+    void tick() {
+        try {
+            var now = System.nanoTime();
+            var due = new ArrayList<Entry>();
+            synchronized ( this ){
+                var to = (now - start) / tick;
+                for ( ; done < to; done++ ) {
+                    var slot = slots.get((int) ((done + 1) % SLOTS));
+                    if (!slot.isEmpty()) {
+                        due.addAll(slot);
+                        slot.clear();
+                    }
+                }
+            }
+
+            for ( Entry entry : due ) {
+                // 检查到期和移除期间不接受新事件
+                synchronized ( entry ){
+                    // 已删除
+                    if (entries.get(entry) != entry)
+                        continue;
+                    // 期间有新事件
+                    if (entry.deadline - now > 0) {
+                        put(entry);
+                        continue;
+                    }
+                    entries.remove(entry, entry);
+                }
+                // 在监听键的处理线程中触发，只触发仍存在的文件
+                loop.parent.later(entry.key, () -> {
+                    if (Files.isRegularFile(loop.keyToDir(entry.key).resolve(entry.context)))
+                        loop.stable(entry.key, entry.context);
+                });
+            }
+        } catch ( RuntimeException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 停止计时 */
+    void close() {
+        task.cancel(false);
+        entries.clear();
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 计时中的文件，使用监听键和相对路径区分
+    private static final
+    class Entry {
+        final WatchKey key;
+        final Path context;
+        // 到期时间
+        volatile long deadline;
+
+        Entry(WatchKey key, Path context) {
+            this.key = key;
+            this.context = context;
+        }
+
+        @Override
+        public
+        boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Entry))
+                return false;
+            var e = (Entry) o;
+            return key == e.key && Objects.equals(context, e.context);
+        }
+
+        @Override
+        public
+        int hashCode() { return System.identityHashCode(key) * 31 + Objects.hashCode(context); }
+    }
+}
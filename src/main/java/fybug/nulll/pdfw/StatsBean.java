@@ -0,0 +1,90 @@
+package fybug.nulll.pdfw;
+/**
+ * <h2>{@link WatchStatsMXBean} 实现.</h2>
+ * 每次读取时生成快照
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since PDFileWatch 0.0.1
+ */
+final
+class StatsBean implements WatchStatsMXBean {
+    // 发布的监听服务
+    private final WaServer<?> server;
+
+    StatsBean(WaServer<?> server) { this.server = server; }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    long getKeysPolled() { return server.stats().keys; }
+
+    @Override
+    public
+    long getEventsReceived() { return server.stats().events; }
+
+    @Override
+    public
+    long getEventsFiltered() { return server.stats().filtered; }
+
+    @Override
+    public
+    long getCreateCallbacks() { return server.stats().createCalls; }
+
+    @Override
+    public
+    long getModifyCallbacks() { return server.stats().modifyCalls; }
+
+    @Override
+    public
+    long getDeleteCallbacks() { return server.stats().deleteCalls; }
+
+    @Override
+    public
+    long getOtherCallbacks() { return server.stats().otherCalls; }
+
+    @Override
+    public
+    long getDomeResults() { return server.stats().dome; }
+
+    @Override
+    public
+    long getCloseResults() { return server.stats().close; }
+
+    @Override
+    public
+    long[] getCallbackTimes() { return server.stats().times(); }
+
+    @Override
+    public
+    long getCallbackP50() { return server.stats().percentile(0.5); }
+
+    @Override
+    public
+    long getCallbackP99() { return server.stats().percentile(0.99); }
+
+    @Override
+    public
+    int getLoops() { return server.loops(); }
+
+    @Override
+    public
+    int getQueuedEvents() { return server.queued(); }
+
+    @Override
+    public
+    long getQueueBlocked() { return server.stats().blocked; }
+
+    @Override
+    public
+    long getEventsDropped() { return server.stats().dropped; }
+
+    @Override
+    public
+    long getEventsConflated() { return server.stats().conflated; }
+
+    @Override
+    public
+    long getEventsDegraded() { return server.stats().degraded; }
+}
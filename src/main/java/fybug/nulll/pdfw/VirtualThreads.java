@@ -0,0 +1,81 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * <h2>虚拟线程工具.</h2>
+ * 在支持虚拟线程的 jdk 中使用虚拟线程运行监听和回调<br/>
+ * 不支持的版本会退回到普通线程
+ * <br/><br/>
+ * 使用 {@link #isSupported()} 检查当前 jdk 是否支持虚拟线程<br/>
+ * 使用 {@link #factory()} 获取虚拟线程工厂<br/>
+ * 使用 {@link #executor()} 获取每个任务一个虚拟线程的线程池
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since PDFileWatch 0.0.1
+ */
+@UtilityClass
+public
+class VirtualThreads {
+    // 虚拟线程工厂，不支持时为 null
+    private final ThreadFactory FACTORY = loadFactory();
+    // 不支持时使用的守护线程工厂，和监听线程一样不阻止虚拟机退出
+    private final ThreadFactory DAEMON = r -> {
+        var t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    };
+
+    // 通过反射获取，兼容低版本 jdk
+    private
+    ThreadFactory loadFactory() {
+        try {
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                                        .getMethod("factory")
+                                        .invoke(builder);
+        } catch ( ReflectiveOperationException | RuntimeException e ) {
+            return null;
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 当前 jdk 是否支持虚拟线程 */
+    public
+    boolean isSupported() { return FACTORY != null; }
+
+    /**
+     * 获取虚拟线程工厂
+     * <p>
+     * 不支持虚拟线程时返回创建守护线程的工厂
+     */
+    @NotNull
+    public
+    ThreadFactory factory() { return FACTORY == null ? DAEMON : FACTORY; }
+
+    /**
+     * 获取每个任务使用一个虚拟线程的线程池
+     * <p>
+     * 不支持虚拟线程时返回可复用守护线程的缓存线程池
+     */
+    @NotNull
+    public
+    ExecutorService executor() {
+        if (FACTORY != null) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, FACTORY);
+            } catch ( ReflectiveOperationException ignored ) {
+            }
+        }
+        return Executors.newCachedThreadPool(DAEMON);
+    }
+}
@@ -3,21 +3,38 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import fybug.nulll.pdconcurrent.ReLock;
 import fybug.nulll.pdconcurrent.SyLock;
-import fybug.nulll.pdfw.loopex.LoopState;
+import fybug.nulll.pdfw.backend.NativeBackend;
+import fybug.nulll.pdfw.backend.WatchBackend;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
@@ -27,7 +44,10 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
  * <h2>路径监听服务.</h2>
  * 该服务提供 {@link WatchService} 的监听服务，使用 {@link WatchKey} 对应监听的反馈<br/>
  * 监听到指定事件将会分发给对应监听键 {@link WatchKey} 的 {@link Loop} 进行处理<br/>
- * 可以使用线程池进行监听<br/>
+ * 可以使用线程池进行监听，也可以使用虚拟线程进行监听<br/>
+ * 可以按监听键分片到多个工作线程并行处理，同一个监听键的事件保持顺序<br/>
+ * 可以限制工作线程的队列大小，队列满时按 {@link OverloadPolicy} 处理<br/>
+ * 可以替换监听后端，在系统不推送事件的挂载点使用轮询<br/>
  * 在该服务中声明需要监控哪些目录
  * <br/><br/>
  * 如需监听全部事件，请使用 {@link #KINDS_ALL}
@@ -59,26 +79,97 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
     /** 状态管理 */
     protected final Condition WAIT = LOCK.newCondition();
 
+    // 监听后端
+    private final WatchBackend backend;
     // 监听服务
     private final WatchService watchService;
     // 线程池
     private final Optional<ExecutorService> polp;
+    // 线程工厂
+    private final ThreadFactory factory;
+    // 分片分发器，为 null 则在监听线程中处理
+    private final Dispatch dispatch;
+    // 定时器，使用时创建
+    private volatile ScheduledExecutorService timer;
+    // 未开启工作线程时运行延迟回调的线程，使用时创建
+    private volatile ExecutorService later;
+    // 未开启工作线程时监听线程和延迟回调的处理互斥
+    private final ReentrantLock INLINE = new ReentrantLock();
     // 当前线程
     private volatile Thread thread;
 
-    // 处理对象映射
-    protected final Map<WatchKey, L> keymap = new HashMap<>();
+    // 处理对象映射，读取无需加锁
+    protected final Map<WatchKey, L> keymap = new ConcurrentHashMap<>();
+    // 失效的监听键，等待批量清理
+    private final Set<WatchKey> dead = ConcurrentHashMap.newKeySet();
+    // 是否已安排清理
+    private final AtomicBoolean reaping = new AtomicBoolean();
+    /** 清理失效监听键的延迟，毫秒，等待分发中的事件处理完 */
+    static final long REAP_DELAY = 1000;
 
     // 是否关闭
-    private boolean isClose = false;
+    private volatile boolean isClose = false;
+
+    // 路径类型缓存
+    final FileAttr.Types TYPES = new FileAttr.Types();
+    // 事件发布者，修改时整体替换
+    volatile EventPublisher[] PUBS = new EventPublisher[0];
+    // 统计，包括所有处理程序
+    final WatchStats STATS = new WatchStats();
+    // 发布的 MBean 名称
+    private volatile ObjectName mbean;
+    // MBean 序号
+    private static final AtomicLong MBEAN_ID = new AtomicLong();
 
     //----------------------------------------------------------------------------------------------
 
     /** 构造并注册监听服务和线程池 */
     protected
-    WaServer(ExecutorService executorService) throws IOException {
-        watchService = FileSystems.getDefault().newWatchService();
+    WaServer(ExecutorService executorService) throws IOException { this(executorService, 0); }
+
+    /**
+     * 构造并注册监听服务和线程池
+     *
+     * @param executorService 监听用的线程池
+     * @param parallel        分发事件的工作线程数量，小于 1 则在监听线程中处理
+     */
+    protected
+    WaServer(ExecutorService executorService, int parallel) throws IOException
+    { this(executorService, parallel, null); }
+
+    /**
+     * 构造并注册监听服务和线程池
+     *
+     * @param executorService 监听用的线程池
+     * @param parallel        分发事件的工作线程数量，小于 1 则在监听线程中处理
+     * @param threadFactory   未指定线程池时创建监听线程和工作线程的工厂，为 null 则使用普通线程
+     *
+     * @see VirtualThreads
+     */
+    protected
+    WaServer(ExecutorService executorService, int parallel, ThreadFactory threadFactory)
+    throws IOException
+    { this(executorService, parallel, threadFactory, null); }
+
+    /**
+     * 构造并注册监听服务和线程池
+     *
+     * @param executorService 监听用的线程池
+     * @param parallel        分发事件的工作线程数量，小于 1 则在监听线程中处理
+     * @param threadFactory   未指定线程池时创建监听线程和工作线程的工厂，为 null 则使用普通线程
+     * @param backend         监听后端，为 null 则使用 {@link NativeBackend}
+     *
+     * @see WatchBackend
+     */
+    protected
+    WaServer(ExecutorService executorService, int parallel, ThreadFactory threadFactory,
+             WatchBackend backend) throws IOException
+    {
+        this.backend = backend == null ? NativeBackend.INSTANCE : backend;
+        watchService = this.backend.newWatchService();
         polp = Optional.ofNullable(executorService);
+        factory = threadFactory == null ? Thread::new : threadFactory;
+        dispatch = parallel < 1 ? null : new Dispatch(this, parallel, factory);
         run();
     }
 
@@ -87,7 +178,7 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
     /** 注册监听的目录 */
     protected
     WatchKey watchPath(@NotNull Path path, WatchEvent.Kind<Path>[] kinds) throws IOException
-    { return path.register(watchService, kinds); }
+    { return backend.register(watchService, path, kinds); }
 
     /** 注册处理程序 */
     protected
@@ -96,6 +187,26 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
         return sendLoop;
     }
 
+    /**
+     * 获取该服务共用的定时器
+     * <p>
+     * 用于延迟触发合并后的事件，首次使用时创建，服务关闭时停止
+     */
+    protected final
+    ScheduledExecutorService timer() {
+        if (timer == null) {
+            LOCK.write(() -> {
+                if (timer == null)
+                    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                        var t = new Thread(r);
+                        t.setDaemon(true);
+                        return t;
+                    });
+            });
+        }
+        return timer;
+    }
+
     //----------------------------------------------------------------------------------------------
 
     // 启动监听线程
@@ -109,19 +220,40 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
             /* 开始监听 */
             try ( var watchService = this.watchService ) {
                 /* 直到中断 */
-                while( LOCK.read(() -> !thread.isInterrupted() && !isClose) ){
+                while( !thread.isInterrupted() && !isClose ){
                     // 当前监听的 key，自动阻塞到可用
                     key = watchService.take();
-                    // 处理
-                    state(key);
-                    // 重置监听
-                    key.reset();
+                    var events = key.pollEvents();
+                    // 共用监听键的处理程序只计一次
+                    STATS.key();
+                    STATS.event(events.size());
+                    if (dispatch == null) {
+                        // 处理
+                        INLINE.lock();
+                        try {
+                            state(key, events);
+                        } catch ( RuntimeException e ) {
+                            // 不中断监听线程
+                            e.printStackTrace();
+                        } finally {
+                            INLINE.unlock();
+                        }
+                    } else {
+                        // 交给对应的工作线程
+                        dispatch.send(key, events);
+                    }
+                    // 重置监听，失效的监听键稍后批量清理
+                    if (!key.reset())
+                        dead(key);
                 }
             } catch ( InterruptedException e ) {
                 // ignored
             } catch ( IOException e ) {
                 e.printStackTrace();
             } finally {
+                // 停止工作线程
+                if (dispatch != null)
+                    dispatch.close();
                 LOCK.write(() -> {
                     isClose = true;
                     WAIT.signalAll();
@@ -131,21 +263,213 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
 
         // 开始执行
         polp.ifPresentOrElse(p -> p.submit(run), () -> {
-            thread = new Thread(run);
+            thread = factory.newThread(run);
             thread.start();
         });
     }
 
-    /** 触发后的处理 */
+    /**
+     * 运行延迟触发的回调
+     * <p>
+     * 开启工作线程时交给监听键对应的工作线程，和该监听键的事件在同一线程中处理，
+     * 否则在单独的线程中运行，和监听线程中的处理互斥<br/>
+     * 回调不在定时器中运行，缓慢的回调不会推迟其他定时任务
+     */
+    void later(WatchKey key, Runnable task) {
+        // 和分发一样，结束后清除读取的属性
+        Runnable run = () -> {
+            try {
+                task.run();
+            } finally {
+                FileAttr.clear();
+            }
+        };
+        if (dispatch != null) {
+            dispatch.submit(key, run);
+            return;
+        }
+        if (later == null) {
+            LOCK.write(() -> {
+                if (later == null)
+                    later = Executors.newSingleThreadExecutor(r -> {
+                        var t = factory.newThread(r);
+                        t.setDaemon(true);
+                        return t;
+                    });
+            });
+        }
+        try {
+            later.execute(() -> {
+                INLINE.lock();
+                try {
+                    run.run();
+                } catch ( RuntimeException e ) {
+                    e.printStackTrace();
+                } finally {
+                    INLINE.unlock();
+                }
+            });
+        } catch ( RejectedExecutionException ignored ) {
+            // 服务已关闭
+        }
+    }
+
+    // 记录失效的监听键，安排一次清理
+    private
+    void dead(WatchKey key) {
+        dead.add(key);
+        if (reaping.compareAndSet(false, true))
+            timer().schedule(this::reapDead, REAP_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    // 在一次加锁中清理所有失效的监听键
     private
-    void state(WatchKey key) {
+    void reapDead() {
+        reaping.set(false);
+        var keys = new ArrayList<>(dead);
+        dead.removeAll(keys);
+        if (keys.isEmpty() || isClose)
+            return;
+        try {
+            LOCK.write(() -> reap(keys));
+        } catch ( RuntimeException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 移除失效的监听键
+     * <p>
+     * 目录被删除或卸载后监听键失效，监听线程会收集失效的监听键，稍后在锁中批量调用<br/>
+     * 默认从 {@link #keymap} 中移除，有其他记录时需重写
+     */
+    protected
+    void reap(Collection<WatchKey> keys) {
+        for ( WatchKey key : keys )
+            keymap.remove(key);
+    }
+
+    /** 触发后的处理 */
+    void state(WatchKey key, List<WatchEvent<?>> events) {
+        TYPES.update(this, key, events);
+        try {
+            route(key, events);
+        } finally {
+            FileAttr.clear();
+        }
+    }
+
+    /** 监听键对应的目录，没有处理程序时使用注册的路径 */
+    @NotNull
+    Path keyToDir(WatchKey key) {
+        var loop = keymap.get(key);
+        return loop == null ? (Path) key.watchable() : loop.keyToDir(key);
+    }
+
+    /**
+     * 将事件分发给监听键对应的处理程序
+     * <p>
+     * 默认交给 {@link #keymap} 中的处理程序，一个监听键对应多个处理程序时可重写
+     */
+    protected
+    void route(WatchKey key, List<WatchEvent<?>> events) {
         // 当前路径的处理程序
-        var loop = LOCK.read(() -> keymap.get(key));
+        var loop = keymap.get(key);
+        if (loop == null)
+            return;
         /* 处理当前事件队列 */
-        for ( WatchEvent<?> event : key.pollEvents() )
-            // 调取回调
-            if (loop.runback(key, event) == LoopState.WATCH_CLOSE)
-                break;
+        loop.runback(key, events);
+    }
+
+    /**
+     * 限制分发队列的大小
+     * <p>
+     * 只在开启工作线程时有效，每个工作线程的队列分别限制，在监听线程中处理时不会积压事件
+     *
+     * @param capacity 每个工作线程队列中的事件数量上限，小于 1 则不限制
+     * @param policy   队列满时的处理方式
+     *
+     * @see OverloadPolicy
+     */
+    public final
+    void queue(int capacity, @NotNull OverloadPolicy policy) {
+        if (dispatch != null)
+            dispatch.limit(capacity, policy);
+    }
+
+    /** 分发队列中待处理的事件数量 */
+    protected
+    int queued() { return dispatch == null ? 0 : dispatch.size(); }
+
+    // Publish
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 创建事件发布者
+     * <p>
+     * 所有处理程序中通过过滤的事件都会发布给订阅者，按订阅者的请求数量在公共线程池中发送，
+     * 服务关闭时结束订阅
+     *
+     * @param buffer   每个订阅者的缓冲区大小
+     * @param conflate 缓冲区满后是否合并同一路径的事件，否则丢弃新的事件
+     *
+     * @return 发布者，关闭后不再发布
+     *
+     * @see EventPublisher
+     */
+    @NotNull
+    public final
+    EventPublisher publisher(int buffer, boolean conflate) {
+        var pub = new EventPublisher(buffer, conflate, ForkJoinPool.commonPool());
+        LOCK.write(() -> {
+            if (isClose) {
+                pub.close();
+            } else {
+                var n = Arrays.copyOf(PUBS, PUBS.length + 1);
+                n[PUBS.length] = pub;
+                PUBS = n;
+            }
+        });
+        return pub;
+    }
+
+    // Stats
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 获取该服务的统计，包括所有处理程序
+     *
+     * @see WatchStats
+     */
+    @NotNull
+    public final
+    WatchStats.Snapshot stats() { return STATS.snapshot(); }
+
+    /** 当前的处理程序数量 */
+    protected
+    int loops() { return (int) keymap.values().stream().distinct().count(); }
+
+    /**
+     * 通过 JMX 发布统计
+     * <p>
+     * 重复调用返回同一个名称，服务关闭时取消发布
+     *
+     * @return 发布的名称
+     *
+     * @see WatchStatsMXBean
+     */
+    @NotNull
+    public final
+    ObjectName exportMBean() throws JMException {
+        return LOCK.trywrite(JMException.class, () -> {
+            if (mbean == null) {
+                var name = new ObjectName("fybug.nulll.pdfw:type=" + getClass().getSimpleName() +
+                                          ",id=" + MBEAN_ID.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsBean(this), name);
+                mbean = name;
+            }
+            return mbean;
+        });
     }
 
     // Close
@@ -178,6 +502,26 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
         for ( Object v : keymap.values().toArray() )
             ((L) v).close();
         keymap.clear();
+        dead.clear();
+        // 停止定时器
+        if (timer != null)
+            timer.shutdownNow();
+        if (later != null)
+            later.shutdownNow();
+        TYPES.clear();
+        // 结束订阅
+        for ( EventPublisher pub : PUBS )
+            pub.close();
+        PUBS = new EventPublisher[0];
+        // 取消发布
+        if (mbean != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean);
+            } catch ( JMException e ) {
+                e.printStackTrace();
+            }
+            mbean = null;
+        }
     }
 
     // Close check
@@ -192,5 +536,5 @@ class WaServer<L extends Loop<?, ?>> implements Closeable {
 
     /** 检查是否关闭 */
     public final
-    boolean isClose() { return LOCK.read(() -> isClose); }
+    boolean isClose() { return isClose; }
 }
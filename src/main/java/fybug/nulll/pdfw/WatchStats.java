@@ -0,0 +1,233 @@
+package fybug.nulll.pdfw;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import fybug.nulll.pdfw.loopex.LoopState;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>监听统计.</h2>
+ * 记录 {@link WaServer} 和 {@link Loop} 的运行情况，使用分段计数器，可以一直开启<br/>
+ * 回调耗时按 2 的幂分桶记录，第 i 个桶为耗时在 [2^(i-1), 2^i) 纳秒内的次数
+ * <br/><br/>
+ * 使用 {@link #snapshot()} 获取当前数据
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see WatchStatsMXBean
+ * @since PDFileWatch 0.0.1
+ */
+public final
+class WatchStats {
+    /** 回调耗时的分桶数量，最后一个桶包含所有更长的耗时 */
+    public static final int BUCKETS = 40;
+
+    // 取到的监听键数量
+    private final LongAdder keys = new LongAdder();
+    // 接收的事件数量
+    private final LongAdder events = new LongAdder();
+    // 被过滤的事件数量
+    private final LongAdder filtered = new LongAdder();
+    // 每种类型执行的回调数量：新建、修改、删除、其他
+    private final LongAdder[] calls = adders(4);
+    // 返回 WATCH_DOME 的次数
+    private final LongAdder dome = new LongAdder();
+    // 返回 WATCH_CLOSE 的次数
+    private final LongAdder close = new LongAdder();
+    // 回调链耗时分桶
+    private final LongAdder[] times = adders(BUCKETS);
+    // 分发队列满时阻塞的次数
+    private final LongAdder blocked = new LongAdder();
+    // 分发队列满时丢弃的事件数量
+    private final LongAdder dropped = new LongAdder();
+    // 分发队列满时合并掉的事件数量
+    private final LongAdder conflated = new LongAdder();
+    // 分发队列满时替换为溢出事件的事件数量
+    private final LongAdder degraded = new LongAdder();
+
+    //----------------------------------------------------------------------------------------------
+
+    WatchStats() {}
+
+    private static
+    LongAdder[] adders(int size) {
+        var a = new LongAdder[size];
+        for ( int i = 0; i < size; i++ )
+            a[i] = new LongAdder();
+        return a;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 记录取到监听键 */
+    void key() { keys.increment(); }
+
+    /** 记录接收事件 */
+    void event(int size) { events.add(size); }
+
+    /** 记录过滤事件 */
+    void filtered() { filtered.increment(); }
+
+    /** 记录执行的回调 */
+    void call(WatchEvent.Kind<?> kind, int size) { calls[index(kind)].add(size); }
+
+    /** 记录回调链的结果 */
+    void state(LoopState state) {
+        if (state == LoopState.WATCH_DOME)
+            dome.increment();
+        else if (state == LoopState.WATCH_CLOSE)
+            close.increment();
+    }
+
+    /** 记录回调链耗时 */
+    void time(long nanos) {
+        int i = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+        times[Math.min(i, BUCKETS - 1)].increment();
+    }
+
+    /** 记录分发队列阻塞 */
+    void blocked() { blocked.increment(); }
+
+    /** 记录分发队列丢弃事件 */
+    void dropped(long size) { dropped.add(size); }
+
+    /** 记录分发队列合并事件 */
+    void conflated(long size) { conflated.add(size); }
+
+    /** 记录分发队列降级事件 */
+    void degraded(long size) { degraded.add(size); }
+
+    // 类型的下标
+    private static
+    int index(WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE)
+            return 0;
+        if (kind == ENTRY_MODIFY)
+            return 1;
+        if (kind == ENTRY_DELETE)
+            return 2;
+        return 3;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 获取当前数据 */
+    @NotNull
+    public
+    Snapshot snapshot() {
+        var t = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ )
+            t[i] = times[i].sum();
+        return new Snapshot(keys.sum(), events.sum(), filtered.sum(), calls[0].sum(),
+                            calls[1].sum(), calls[2].sum(), calls[3].sum(), dome.sum(),
+                            close.sum(), t, blocked.sum(), dropped.sum(), conflated.sum(),
+                            degraded.sum());
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    /**
+     * <h2>统计快照.</h2>
+     * 获取时的统计数据，各项分别读取，不保证相互之间一致
+     *
+     * @author fybug
+     * @version 0.0.1
+     * @since WatchStats 0.0.1
+     */
+    public static final
+    class Snapshot {
+        /** 取到的监听键数量 */
+        public final long keys;
+        /** 接收的事件数量 */
+        public final long events;
+        /** 被 runCheck 过滤的事件数量 */
+        public final long filtered;
+        /** 新建事件执行的回调数量 */
+        public final long createCalls;
+        /** 修改事件执行的回调数量 */
+        public final long modifyCalls;
+        /** 删除事件执行的回调数量 */
+        public final long deleteCalls;
+        /** 其他事件执行的回调数量 */
+        public final long otherCalls;
+        /** 回调返回 {@link LoopState#WATCH_DOME} 的次数 */
+        public final long dome;
+        /** 回调返回 {@link LoopState#WATCH_CLOSE} 的次数 */
+        public final long close;
+        /** 分发队列满时阻塞的次数 */
+        public final long blocked;
+        /** 分发队列满时丢弃的事件数量 */
+        public final long dropped;
+        /** 分发队列满时合并掉的事件数量 */
+        public final long conflated;
+        /** 分发队列满时替换为溢出事件的事件数量 */
+        public final long degraded;
+        // 回调链耗时分桶
+        private final long[] times;
+
+        Snapshot(long keys, long events, long filtered, long createCalls, long modifyCalls,
+                 long deleteCalls, long otherCalls, long dome, long close, long[] times,
+                 long blocked, long dropped, long conflated, long degraded)
+        {
+            this.keys = keys;
+            this.events = events;
+            this.filtered = filtered;
+            this.createCalls = createCalls;
+            this.modifyCalls = modifyCalls;
+            this.deleteCalls = deleteCalls;
+            this.otherCalls = otherCalls;
+            this.dome = dome;
+            this.close = close;
+            this.times = times;
+            this.blocked = blocked;
+            this.dropped = dropped;
+            this.conflated = conflated;
+            this.degraded = degraded;
+        }
+
+        /** 回调链耗时分桶，第 i 个为耗时在 [2^(i-1), 2^i) 纳秒内的次数 */
+        @NotNull
+        public
+        long[] times() { return times.clone(); }
+
+        /**
+         * 估算回调链耗时的分位数
+         *
+         * @param q 分位，0 到 1
+         *
+         * @return 所在分桶的上限，纳秒，没有数据为 0
+         */
+        public
+        long percentile(double q) {
+            long total = 0;
+            for ( long t : times )
+                total += t;
+            if (total == 0)
+                return 0;
+            long need = (long) Math.ceil(total * Math.min(Math.max(q, 0), 1));
+            long sum = 0;
+            for ( int i = 0; i < times.length; i++ ) {
+                sum += times[i];
+                if (sum >= need && sum > 0)
+                    return i == 0 ? 0 : 1L << Math.min(i, 62);
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public
+        String toString() {
+            return "WatchStats{keys=" + keys + ", events=" + events + ", filtered=" + filtered +
+                   ", calls=[" + createCalls + ", " + modifyCalls + ", " + deleteCalls + ", " +
+                   otherCalls + "], dome=" + dome + ", close=" + close + ", overload=[" + blocked +
+                   ", " + dropped + ", " + conflated + ", " + degraded + "], times=" +
+                   Arrays.toString(times) + '}';
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package fybug.nulll.pdfw;
+/**
+ * <h2>监听统计 MBean.</h2>
+ * 通过 JMX 发布 {@link WaServer} 的统计数据，名称为
+ * {@code fybug.nulll.pdfw:type=<监听服务类名>,id=<序号>}<br/>
+ * 数据为该服务下所有处理程序的合计
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see WatchStats
+ * @see WaServer#exportMBean()
+ * @since PDFileWatch 0.0.1
+ */
+public
+interface WatchStatsMXBean {
+    /** 取到的监听键数量 */
+    long getKeysPolled();
+
+    /** 接收的事件数量 */
+    long getEventsReceived();
+
+    /** 被 runCheck 过滤的事件数量 */
+    long getEventsFiltered();
+
+    /** 新建事件执行的回调数量 */
+    long getCreateCallbacks();
+
+    /** 修改事件执行的回调数量 */
+    long getModifyCallbacks();
+
+    /** 删除事件执行的回调数量 */
+    long getDeleteCallbacks();
+
+    /** 其他事件执行的回调数量 */
+    long getOtherCallbacks();
+
+    /** 回调返回 WATCH_DOME 的次数 */
+    long getDomeResults();
+
+    /** 回调返回 WATCH_CLOSE 的次数 */
+    long getCloseResults();
+
+    /** 回调链耗时分桶，第 i 个为耗时在 [2^(i-1), 2^i) 纳秒内的次数 */
+    long[] getCallbackTimes();
+
+    /** 回调链耗时的 50 分位，纳秒 */
+    long getCallbackP50();
+
+    /** 回调链耗时的 99 分位，纳秒 */
+    long getCallbackP99();
+
+    /** 当前的处理程序数量 */
+    int getLoops();
+
+    /** 分发队列中待处理的事件数量 */
+    int getQueuedEvents();
+
+    /** 分发队列满时阻塞的次数 */
+    long getQueueBlocked();
+
+    /** 分发队列满时丢弃的事件数量 */
+    long getEventsDropped();
+
+    /** 分发队列满时合并掉的事件数量 */
+    long getEventsConflated();
+
+    /** 分发队列满时替换为溢出事件的事件数量 */
+    long getEventsDegraded();
+}
@@ -0,0 +1,53 @@
+package fybug.nulll.pdfw.backend;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * <h2>系统监听后端.</h2>
+ * 使用默认文件系统的 {@link WatchService}，由 jdk 对接系统的推送，该类不调用任何本地接口<br/>
+ * 可附加注册时使用的 {@link WatchEvent.Modifier}，如 jdk 提供的灵敏度或整树监听修饰，
+ * 不支持的修饰由注册时抛出 {@link UnsupportedOperationException}
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since backend 0.0.1
+ */
+public
+class NativeBackend implements WatchBackend {
+    /** 共用的实例 */
+    public static final NativeBackend INSTANCE = new NativeBackend();
+
+    // 注册时附加的修饰
+    private final WatchEvent.Modifier[] modifiers;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 构造系统监听后端
+     *
+     * @param modifiers 注册时附加的修饰
+     */
+    public
+    NativeBackend(@NotNull WatchEvent.Modifier... modifiers) { this.modifiers = modifiers.clone(); }
+
+    //----------------------------------------------------------------------------------------------
+
+    @NotNull
+    @Override
+    public
+    WatchService newWatchService() throws IOException
+    { return FileSystems.getDefault().newWatchService(); }
+
+    @NotNull
+    @Override
+    public
+    WatchKey register(@NotNull WatchService service, @NotNull Path dir,
+                      @NotNull WatchEvent.Kind<Path>[] kinds) throws IOException
+    { return dir.register(service, kinds, modifiers); }
+}
@@ -0,0 +1,113 @@
+package fybug.nulll.pdfw.backend;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * <h2>轮询监听后端.</h2>
+ * 定时扫描注册的目录，对比子项的修改时间和大小得出事件<br/>
+ * 用于 NFS、FUSE 等系统不推送事件的挂载点
+ * <br/><br/>
+ * 每次扫描只处理扫描额度内的目录，剩余的目录在下一次扫描中继续，按顺序轮流扫描<br/>
+ * 未监听修改事件的目录只在目录的修改时间变化后才列出子项<br/>
+ * 一次扫描中的目录由并行扫描线程处理
+ * <br/><br/>
+ * <pre>使用示例：
+ *     var watch = PDFileWatch.depthWatch()
+ *                            .backend(PollBackend.build().interval(2000).budget(50000).build())
+ *                            .build();
+ * </pre>
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since backend 0.0.1
+ */
+public
+class PollBackend implements WatchBackend {
+    /** 扫描间隔，毫秒 */
+    final long interval;
+    /** 每秒最多检查的子项数量，小于 1 则不限制 */
+    final long budget;
+    /** 并行扫描的线程数量 */
+    final int parallelism;
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 构造轮询后端
+     *
+     * @param interval    扫描间隔，毫秒
+     * @param budget      每秒最多检查的子项数量，小于 1 则不限制
+     * @param parallelism 并行扫描的线程数量，小于 1 则使用处理器数量
+     */
+    public
+    PollBackend(long interval, long budget, int parallelism) {
+        this.interval = Math.max(interval, 1);
+        this.budget = budget;
+        this.parallelism = parallelism < 1 ? Runtime.getRuntime().availableProcessors() :
+                           parallelism;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @NotNull
+    @Override
+    public
+    WatchService newWatchService() { return new PollService(this); }
+
+    @NotNull
+    @Override
+    public
+    WatchKey register(@NotNull WatchService service, @NotNull Path dir,
+                      @NotNull WatchEvent.Kind<Path>[] kinds) throws IOException
+    {
+        if (!(service instanceof PollService))
+            throw new ProviderMismatchException();
+        return ((PollService) service).register(dir, kinds);
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    /** 获取构造工具 */
+    @NotNull
+    public static
+    Build build() { return new Build(); }
+
+    /**
+     * <h2>轮询后端构造工具.</h2>
+     * 使用 {@link #interval(long)} 设置扫描间隔<br/>
+     * 使用 {@link #budget(long)} 设置扫描额度<br/>
+     * 使用 {@link #parallelism(int)} 设置并行扫描的线程数量
+     *
+     * @author fybug
+     * @version 0.0.1
+     * @since PollBackend 0.0.1
+     */
+    @Accessors( fluent = true, chain = true )
+    public static final
+    class Build {
+        /** 扫描间隔，毫秒 */
+        @Setter private long interval = 1000;
+        /**
+         * 每秒最多检查的子项数量
+         * <p>
+         * 用于限制扫描对挂载点的压力，超出额度的目录在下一次扫描中继续，小于 1 则不限制
+         */
+        @Setter private long budget = 0;
+        /** 并行扫描的线程数量，小于 1 则使用处理器数量 */
+        @Setter private int parallelism = 0;
+
+        /** 构造轮询后端 */
+        @NotNull
+        public
+        PollBackend build() { return new PollBackend(interval, budget, parallelism); }
+    }
+}
@@ -0,0 +1,255 @@
+package fybug.nulll.pdfw.backend;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fybug.nulll.pdfw.PathEvent;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>轮询监听键.</h2>
+ * 记录目录下直接子项的修改时间和大小，扫描时对比得出事件<br/>
+ * 行为和系统的监听键一致：有事件后放入队列，{@link #reset()} 后才会再次放入
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see PollService
+ * @since backend 0.0.1
+ */
+final
+class PollKey implements WatchKey {
+    /** 未取走的事件上限，超出后合并为一个溢出事件 */
+    static final int MAX_EVENTS = 512;
+
+    // 所属的服务
+    private final PollService service;
+    /** 监听的目录 */
+    final Path dir;
+
+    // 监听的类型
+    private volatile boolean create, modify, delete;
+    // 是否有效
+    private volatile boolean valid = true;
+
+    // 子项名称 -> 记录，只在扫描中访问
+    private volatile Map<Path, Stamp> stamps = new HashMap<>();
+    // 上次扫描时目录的修改时间
+    private long dirtime = Long.MIN_VALUE;
+
+    // 未取走的事件，由 this 保护
+    private List<WatchEvent<?>> events = new ArrayList<>();
+    // 是否已在队列中，由 this 保护
+    private boolean signalled = false;
+
+    //----------------------------------------------------------------------------------------------
+
+    PollKey(PollService service, Path dir, WatchEvent.Kind<?>[] kinds) {
+        this.service = service;
+        this.dir = dir;
+        kinds(kinds);
+    }
+
+    /** 更新监听的类型 */
+    void kinds(WatchEvent.Kind<?>[] kinds) {
+        boolean c = false, m = false, d = false;
+        for ( WatchEvent.Kind<?> kind : kinds ) {
+            c |= kind == ENTRY_CREATE;
+            m |= kind == ENTRY_MODIFY;
+            d |= kind == ENTRY_DELETE;
+        }
+        create = c;
+        modify = m;
+        delete = d;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 记录初始状态 */
+    synchronized
+    void init() throws IOException {
+        dirtime = Files.getLastModifiedTime(dir).toMillis();
+        stamps = read();
+    }
+
+    /** 预计的扫描开销，为上次的子项数量 */
+    int cost() { return stamps.size() + 1; }
+
+    /** 扫描并对比，有事件则放入队列 */
+    synchronized
+    void scan() {
+        if (!valid)
+            return;
+        Map<Path, Stamp> now;
+        try {
+            // 目录没有变化且不需要修改事件时无需列出子项
+            var time = Files.getLastModifiedTime(dir).toMillis();
+            if (!modify && time == dirtime)
+                return;
+            dirtime = time;
+            now = read();
+        } catch ( IOException | DirectoryIteratorException e ) {
+            // 目录已不存在，监听键失效
+            cancel();
+            signal(List.of());
+            return;
+        }
+
+        var list = new ArrayList<WatchEvent<?>>();
+        var old = stamps;
+        if (delete) {
+            for ( Path name : old.keySet() )
+                if (!now.containsKey(name))
+                    list.add(new PathEvent(ENTRY_DELETE, 1, name));
+        }
+        now.forEach((name, stamp) -> {
+            var o = old.get(name);
+            if (o == null) {
+                if (create)
+                    list.add(new PathEvent(ENTRY_CREATE, 1, name));
+            } else if (modify && !o.equals(stamp)) {
+                list.add(new PathEvent(ENTRY_MODIFY, 1, name));
+            }
+        });
+        stamps = now;
+        if (!list.isEmpty())
+            signal(list);
+    }
+
+    // 列出目录下所有子项
+    private
+    Map<Path, Stamp> read() throws IOException {
+        var map = new HashMap<Path, Stamp>(Math.max(stamps.size() * 4 / 3, 16));
+        try ( var stream = Files.newDirectoryStream(dir) ) {
+            for ( Path path : stream ) {
+                try {
+                    var attr = Files.readAttributes(path, BasicFileAttributes.class,
+                                                    LinkOption.NOFOLLOW_LINKS);
+                    map.put(path.getFileName(), new Stamp(attr.lastModifiedTime().toMillis(),
+                                                          attr.size()));
+                } catch ( IOException e ) {
+                    // 已被删除
+                }
+            }
+        }
+        return map;
+    }
+
+    // 加入事件，不在队列中则放入
+    private synchronized
+    void signal(List<WatchEvent<?>> add) {
+        if (events.size() + add.size() > MAX_EVENTS) {
+            events.clear();
+            events.add(Overflow.INSTANCE);
+        } else if (events.isEmpty() || events.get(0) != Overflow.INSTANCE) {
+            events.addAll(add);
+        }
+        if (!signalled) {
+            signalled = true;
+            service.signal(this);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    boolean isValid() { return valid && service.isOpen(); }
+
+    @Override
+    public synchronized
+    List<WatchEvent<?>> pollEvents() {
+        var list = events;
+        events = new ArrayList<>();
+        return list;
+    }
+
+    @Override
+    public synchronized
+    boolean reset() {
+        if (!isValid())
+            return false;
+        if (signalled) {
+            // 期间有新事件则重新放入队列
+            if (events.isEmpty())
+                signalled = false;
+            else
+                service.signal(this);
+        }
+        return true;
+    }
+
+    @Override
+    public
+    void cancel() {
+        if (!valid)
+            return;
+        valid = false;
+        if (service != null)
+            service.cancel(this);
+    }
+
+    @Override
+    public
+    Watchable watchable() { return dir; }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 子项记录
+    private static final
+    class Stamp {
+        final long time;
+        final long size;
+
+        Stamp(long time, long size) {
+            this.time = time;
+            this.size = size;
+        }
+
+        @Override
+        public
+        boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Stamp))
+                return false;
+            var s = (Stamp) o;
+            return time == s.time && size == s.size;
+        }
+
+        @Override
+        public
+        int hashCode() { return Long.hashCode(time) * 31 + Long.hashCode(size); }
+    }
+
+    // 溢出事件
+    private static final
+    class Overflow implements WatchEvent<Object> {
+        static final Overflow INSTANCE = new Overflow();
+
+        @Override
+        public
+        Kind<Object> kind() { return StandardWatchEventKinds.OVERFLOW; }
+
+        @Override
+        public
+        int count() { return 1; }
+
+        @Override
+        public
+        Object context() { return null; }
+    }
+}
@@ -0,0 +1,177 @@
+package fybug.nulll.pdfw.backend;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>轮询监听服务.</h2>
+ * 由 {@link PollBackend} 创建，定时扫描注册的目录并将有事件的监听键放入队列
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see PollKey
+ * @since backend 0.0.1
+ */
+final
+class PollService implements WatchService {
+    // 关闭时放入队列的标记，用于唤醒等待的线程
+    private static final WatchKey CLOSE = new PollKey(null, Path.of(""), new WatchEvent.Kind<?>[0]);
+
+    // 配置
+    private final PollBackend backend;
+    // 目录 -> 监听键
+    private final Map<Path, PollKey> keys = new ConcurrentHashMap<>();
+    // 有事件的监听键
+    private final LinkedBlockingDeque<WatchKey> ready = new LinkedBlockingDeque<>();
+    // 定时扫描
+    private final ScheduledExecutorService timer;
+    // 并行扫描
+    private final ForkJoinPool pool;
+
+    // 下一次扫描开始的位置
+    private int cursor = 0;
+    // 是否关闭
+    private volatile boolean close = false;
+
+    //----------------------------------------------------------------------------------------------
+
+    PollService(PollBackend backend) {
+        this.backend = backend;
+        pool = new ForkJoinPool(backend.parallelism);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "PDFileWatch-poll");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::scan, backend.interval, backend.interval,
+                                     TimeUnit.MILLISECONDS);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 注册目录，已注册则更新监听的类型 */
+    PollKey register(Path dir, WatchEvent.Kind<Path>[] kinds) throws IOException {
+        checkClose();
+        if (!Files.isDirectory(dir))
+            throw new NotDirectoryException(dir.toString());
+        dir = dir.toAbsolutePath();
+
+        var key = keys.get(dir);
+        if (key != null && key.isValid()) {
+            key.kinds(kinds);
+            return key;
+        }
+        // 记录初始状态，已有的子项不产生事件
+        key = new PollKey(this, dir, kinds);
+        key.init();
+        keys.put(dir, key);
+        return key;
+    }
+
+    /** 移除监听键 */
+    void cancel(PollKey key) { keys.remove(key.dir, key); }
+
+    /** 监听键有事件，放入队列 */
+    void signal(PollKey key) { ready.offer(key); }
+
+    /** 服务是否开启 */
+    boolean isOpen() { return !close; }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 扫描一轮，只扫描额度内的目录
+    private
+    void scan() {
+        try {
+            var all = keys.values().toArray(new PollKey[0]);
+            if (all.length == 0)
+                return;
+
+            // 本轮的额度，至少扫描一个目录
+            var allow = backend.budget < 1 ? Long.MAX_VALUE :
+                        Math.max(backend.budget * backend.interval / 1000, 1);
+            var batch = new ArrayList<PollKey>();
+            int i = cursor % all.length, n = 0;
+            while( n < all.length && allow > 0 ){
+                var key = all[i];
+                batch.add(key);
+                allow -= key.cost();
+                i = (i + 1) % all.length;
+                n++;
+            }
+            cursor = i;
+
+            pool.submit(() -> batch.parallelStream().forEach(PollKey::scan)).join();
+        } catch ( RuntimeException e ) {
+            if (!close)
+                e.printStackTrace();
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    WatchKey poll() {
+        checkClose();
+        return check(ready.poll());
+    }
+
+    @Override
+    public
+    WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+        checkClose();
+        return check(ready.poll(timeout, unit));
+    }
+
+    @Override
+    public
+    WatchKey take() throws InterruptedException {
+        checkClose();
+        return check(ready.take());
+    }
+
+    // 取到关闭标记说明服务已关闭
+    private
+    WatchKey check(WatchKey key) {
+        if (key == CLOSE)
+            throw new ClosedWatchServiceException();
+        return key;
+    }
+
+    private
+    void checkClose() {
+        if (close)
+            throw new ClosedWatchServiceException();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    public
+    void close() {
+        if (close)
+            return;
+        close = true;
+        timer.shutdownNow();
+        pool.shutdownNow();
+        keys.values().forEach(PollKey::cancel);
+        keys.clear();
+        // 唤醒等待的线程
+        ready.clear();
+        ready.offer(CLOSE);
+    }
+}
@@ -0,0 +1,46 @@
+package fybug.nulll.pdfw.backend;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * <h2>监听后端.</h2>
+ * {@link fybug.nulll.pdfw.WaServer} 通过该接口创建监听服务和注册目录<br/>
+ * 后端产生的 {@link WatchKey} 和事件与系统监听一致，处理程序无需区分
+ * <br/><br/>
+ * 默认使用 {@link NativeBackend}，在不支持系统监听的挂载点可使用 {@link PollBackend}<br/>
+ * 目前只有这两种实现，都基于 jdk 的接口，没有直接调用系统接口的实现
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see NativeBackend
+ * @see PollBackend
+ * @since backend 0.0.1
+ */
+public
+interface WatchBackend {
+    /**
+     * 创建监听服务
+     * <p>
+     * 每个 {@link fybug.nulll.pdfw.WaServer} 创建一个，随其关闭
+     */
+    @NotNull
+    WatchService newWatchService() throws IOException;
+
+    /**
+     * 注册目录
+     *
+     * @param service 由该后端创建的监听服务
+     * @param dir     要监听的目录
+     * @param kinds   要监听的类型
+     *
+     * @return 目录对应的监听键，重复注册同一个目录返回同一个监听键
+     */
+    @NotNull
+    WatchKey register(@NotNull WatchService service, @NotNull Path dir,
+                      @NotNull WatchEvent.Kind<Path>[] kinds) throws IOException;
+}
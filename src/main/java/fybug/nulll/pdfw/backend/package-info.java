@@ -0,0 +1,9 @@
+/**
+ * <h2>监听后端.</h2>
+ * 该包下包含 {@link fybug.nulll.pdfw.WaServer} 使用的监听后端接口，以及系统监听和轮询两种实现
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @since PDFileWatch 0.0.1
+ */
+package fybug.nulll.pdfw.backend;
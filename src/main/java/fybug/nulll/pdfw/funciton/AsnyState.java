@@ -9,6 +9,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 
 import fybug.nulll.pdfw.StateBack;
+import fybug.nulll.pdfw.VirtualThreads;
 import fybug.nulll.pdfw.loopex.LoopState;
 
 import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
@@ -16,6 +17,7 @@ import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
 /**
  * <h2>异步处理接口.</h2>
  * 使用线程池进行处理
+ * 可使用 {@link #asnyvirtual(BiConsumer[])} 让每次回调运行在一个虚拟线程中
  * 自动返回 {@link LoopState#WATCH_NEXT}.
  *
  * @author fybug
@@ -23,10 +25,14 @@ import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
  * @see BiConsumer
  * @see StateBack
  * @see ExecutorService
+ * @see VirtualThreads
  * @since funciton 0.0.1
  */
 public final
 class AsnyState implements StateBack {
+    // 共用的虚拟线程池
+    private static volatile ExecutorService VIRTUAL;
+
     // 回调
     private final BiConsumer<WatchEvent<?>, String>[] fun;
     // 线程池
@@ -64,4 +70,27 @@ class AsnyState implements StateBack {
     AsnyState asnystate(@Nullable ExecutorService po,
                         @NotNull BiConsumer<WatchEvent<?>, String>... consumers)
     { return new AsnyState(consumers.clone(), po); }
+
+    /**
+     * 创建并传入回调链，每次回调运行在一个虚拟线程中
+     * <p>
+     * jdk 不支持虚拟线程时使用共用的缓存线程池
+     */
+    @SafeVarargs
+    @NotNull
+    public static
+    AsnyState asnyvirtual(@NotNull BiConsumer<WatchEvent<?>, String>... consumers)
+    { return asnystate(virtual(), consumers); }
+
+    // 获取共用的虚拟线程池
+    private static
+    ExecutorService virtual() {
+        if (VIRTUAL == null) {
+            synchronized ( AsnyState.class ) {
+                if (VIRTUAL == null)
+                    VIRTUAL = VirtualThreads.executor();
+            }
+        }
+        return VIRTUAL;
+    }
 }
@@ -3,6 +3,7 @@ import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 
+import fybug.nulll.pdfw.PathKind;
 import fybug.nulll.pdfw.watch.DepthLoop;
 import fybug.nulll.pdfw.watch.DepthWatch;
 
@@ -31,11 +32,10 @@ class DepthFile extends DepthLoop {
         if (!super.runCheck(key, event, kind))
             return false;
         if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-            // 当前路径
-            var paths = Path.of(keyToPath(key), event.context().toString());
             // 不符合规则
-            return paths.toFile().isFile();
+            return attr(key, event).isFile();
         }
-        return true;
+        // 只识别目录的移动
+        return kind != PathKind.ENTRY_MOVE;
     }
 }
@@ -1,5 +1,6 @@
 package fybug.nulll.pdfw.loopex;
-import java.io.File;
+import org.jetbrains.annotations.NotNull;
+
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
@@ -7,12 +8,15 @@ import java.nio.file.WatchKey;
 import fybug.nulll.pdfw.watch.SendLoop;
 import fybug.nulll.pdfw.watch.SendWatch;
 
+import static fybug.nulll.pdfw.loopex.LoopState.WATCH_CLOSE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 /**
  * <h2>文件监控.</h2>
- * 该处理程序用于监听一个指定的文件
+ * 该处理程序用于监听一个指定的文件<br/>
+ * 可开启追加读取，直接接收文件新追加的内容
  *
  * @author fybug
  * @version 0.0.1
@@ -22,14 +26,47 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 public
 class FileSend extends SendLoop {
     // 当前文件的名称
-    private final String filename;
+    private final Path filename;
+    // 所在目录
+    private final String dir;
+    // 追加读取，未开启为 null
+    private volatile FileTail tail;
 
     //----------------------------------------------------------------------------------------------
 
     public
     FileSend(WatchKey key, SendWatch ws, Path path) {
         super(key, ws, path);
-        filename = path.toFile().getName();
+        filename = path.getFileName();
+        dir = Path.of(super.getPath()).getParent().toString();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 追加读取回调
+     * <p>
+     * 开启追加读取，文件有新建或修改事件时将新追加的内容交给回调，在其他回调之前运行<br/>
+     * 保持文件打开并记录读取位置，开启时文件已存在则从末尾开始；文件变小时视为被截断，
+     * 被删除、移走或替换为其他文件时视为被轮换，均从头读取
+     *
+     * @param backs 回调
+     *
+     * @return this
+     *
+     * @see TailBack
+     */
+    @NotNull
+    public
+    FileSend tail(@NotNull TailBack... backs) {
+        LOCK.write(() -> {
+            if (isClose())
+                return;
+            if (tail == null)
+                tail = new FileTail(Path.of(dir, filename.toString()));
+            tail.add(backs);
+        });
+        return this;
     }
 
     //----------------------------------------------------------------------------------------------
@@ -37,14 +74,23 @@ class FileSend extends SendLoop {
     @Override
     protected
     boolean runCheck(WatchKey key, WatchEvent<?> event, WatchEvent.Kind<?> kind) {
-        var files = event.context().toString();
-
         /* 检查事件 */
-        if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-            // 检查是否为文件
-            if (!files.equals(filename) || !new File(getPath(), filename).isFile())
+        if (!filename.equals(event.context()))
+            return false;
+        // 追加读取，不论事件是否重复
+        var tail = this.tail;
+        if (tail != null &&
+            (kind == ENTRY_CREATE || kind == ENTRY_MODIFY || kind == ENTRY_DELETE))
+        {
+            var attr = kind == ENTRY_DELETE ? null : attr(key, event).attributes();
+            if (tail.follow(kind, attr) == WATCH_CLOSE) {
+                close();
                 return false;
-        } else if (!files.equals(filename))
+            }
+        }
+        // 检查是否为文件
+        if ((kind == ENTRY_CREATE || kind == ENTRY_MODIFY) &&
+            !attr(key, event).isFile())
             return false;
 
         return super.runCheck(key, event, kind);
@@ -54,5 +100,13 @@ class FileSend extends SendLoop {
 
     @Override
     public
-    String getPath() { return Path.of(super.getPath()).getParent().toString(); }
+    String getPath() { return dir; }
+
+    @Override
+    protected
+    void close0() {
+        super.close0();
+        if (tail != null)
+            tail.close();
+    }
 }
@@ -0,0 +1,176 @@
+package fybug.nulll.pdfw.loopex;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static fybug.nulll.pdfw.loopex.LoopState.WATCH_CLOSE;
+import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
+import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+/**
+ * <h2>文件追加读取.</h2>
+ * 保持文件打开并记录读取位置，有事件时将新追加的内容交给 {@link TailBack}<br/>
+ * 内容读取到堆内存中再交出，回调中文件被截断不影响已交出的内容<br/>
+ * 每次最多交出 {@link #SLICE} 字节，超出的分多次交出
+ * <br/><br/>
+ * 文件变小视为被截断，从头读取<br/>
+ * 文件被删除或文件标识变化视为被轮换，重新打开后从头读取
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see FileSend#tail(TailBack...)
+ * @since loopex 0.0.1
+ */
+final
+class FileTail {
+    /** 每次交出的最大字节数 */
+    static final int SLICE = 1 << 20;
+
+    // 读取的文件
+    private final Path file;
+    // 回调，修改时整体替换
+    private volatile TailBack[] backs = new TailBack[0];
+
+    // 打开的文件，由 this 保护
+    private FileChannel channel;
+    // 打开的文件的标识
+    private Object fileKey;
+    // 已读取到的位置
+    private long position = 0;
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 文件已存在则从末尾开始 */
+    FileTail(Path file) {
+        this.file = file;
+        try {
+            open(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+            position = channel.size();
+        } catch ( NoSuchFileException e ) {
+            // 等待新建
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 追加回调 */
+    synchronized
+    void add(TailBack[] add) {
+        var n = Arrays.copyOf(backs, backs.length + add.length);
+        System.arraycopy(add, 0, n, backs.length, add.length);
+        backs = n;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 处理文件的事件
+     *
+     * @param kind 事件类型
+     * @param attr 文件当前的属性，不存在为 {@code null}
+     *
+     * @return 回调返回 {@link LoopState#WATCH_CLOSE} 时返回该状态
+     */
+    synchronized
+    LoopState follow(WatchEvent.Kind<?> kind, BasicFileAttributes attr) {
+        if (kind == ENTRY_DELETE || attr == null) {
+            // 被删除或移走，之后新建的文件从头读取
+            release();
+            return WATCH_NEXT;
+        }
+        try {
+            // 被轮换
+            if (channel != null && attr.fileKey() != null && !attr.fileKey().equals(fileKey))
+                release();
+            if (channel == null) {
+                open(attr.fileKey());
+                position = 0;
+            }
+            var size = attr.size();
+            // 被截断
+            if (size < position)
+                position = 0;
+
+            while( position < size ){
+                var len = (int) Math.min(SLICE, size - position);
+                var buf = read(len);
+                if (buf == null)
+                    break;
+                var state = send(buf, position);
+                position += buf.limit();
+                if (state == WATCH_CLOSE)
+                    return state;
+            }
+        } catch ( NoSuchFileException e ) {
+            release();
+        } catch ( IOException e ) {
+            // 读取中被截断
+            e.printStackTrace();
+            release();
+        }
+        return WATCH_NEXT;
+    }
+
+    // 读取当前位置的内容，没有内容返回 null
+    private
+    ByteBuffer read(int len) throws IOException {
+        var buf = ByteBuffer.allocate(len);
+        while( buf.hasRemaining() ){
+            // 读取中被截断，交出已读取的部分
+            if (channel.read(buf, position + buf.position()) < 0)
+                break;
+        }
+        buf.flip();
+        return buf.hasRemaining() ? buf.asReadOnlyBuffer() : null;
+    }
+
+    // 交给回调链，每个回调收到独立的位置
+    private
+    LoopState send(ByteBuffer buf, long position) {
+        var state = WATCH_NEXT;
+        for ( TailBack back : backs ) {
+            state = back.apply(buf.duplicate(), position);
+            if (state == WATCH_DOME || state == WATCH_CLOSE)
+                break;
+        }
+        return state;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 打开文件，没有标识时只检查截断
+    private
+    void open(Object key) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileKey = key;
+    }
+
+    // 关闭文件
+    private
+    void release() {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+        channel = null;
+        fileKey = null;
+    }
+
+    /** 停止读取 */
+    synchronized
+    void close() {
+        release();
+        backs = new TailBack[0];
+    }
+}
@@ -1,5 +1,4 @@
 package fybug.nulll.pdfw.loopex;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
@@ -32,10 +31,8 @@ class SendDir extends SendLoop {
         if (!super.runCheck(key, event, kind))
             return false;
         if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-            // 当前路径
-            var paths = Path.of(getPath(), event.context().toString());
             // 不符合规则
-            return Files.isDirectory(paths);
+            return attr(key, event).isDirectory();
         }
         return true;
     }
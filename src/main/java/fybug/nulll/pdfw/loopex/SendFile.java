@@ -31,10 +31,8 @@ class SendFile extends SendLoop {
         if (!super.runCheck(key, event, kind))
             return false;
         if (kind == ENTRY_CREATE || kind == ENTRY_MODIFY) {
-            // 当前路径
-            var paths = Path.of(getPath(), event.context().toString());
             // 不符合规则
-            return paths.toFile().isFile();
+            return attr(key, event).isFile();
         }
         return true;
     }
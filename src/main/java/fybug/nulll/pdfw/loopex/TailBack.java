@@ -0,0 +1,32 @@
+package fybug.nulll.pdfw.loopex;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <h2>{@link FileSend} 追加内容回调.</h2>
+ * 接收文件新追加的内容，返回 {@link LoopState} 作为状态
+ * <br/><br/>
+ * ByteBuffer 为新追加的内容，只读，只在回调中有效<br/>
+ * long 为内容在文件中的位置<br/>
+ * 返回 {@link LoopState#WATCH_DOME} 跳过后面的回调，返回 {@link LoopState#WATCH_CLOSE} 关闭处理程序
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see FileSend#tail(TailBack...)
+ * @since loopex 0.0.1
+ */
+@FunctionalInterface
+public
+interface TailBack {
+    /**
+     * 处理追加的内容
+     *
+     * @param data     追加的内容
+     * @param position 内容在文件中的位置
+     *
+     * @return 状态
+     */
+    @NotNull
+    LoopState apply(@NotNull ByteBuffer data, long position);
+}
@@ -1,29 +1,28 @@
 package fybug.nulll.pdfw.watch;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fybug.nulll.pdfw.Loop;
-import fybug.nulll.pdfw.StateBack;
 import fybug.nulll.pdfw.WaServer;
-import fybug.nulll.pdfw.loopex.LoopState;
-
-import static fybug.nulll.pdfw.loopex.LoopState.WATCH_CLOSE;
-import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
-import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
 
 /**
  * <h2>{@link DepthWatch} 对接处理程序.</h2>
  * 可记录每次触发的目录的父目录<br/>
- * 新建目录自动监听
+ * 新建目录自动监听<br/>
+ * 监听服务开启了移动识别时，移动进来的目录只修改记录的路径<br/>
+ * 系统事件溢出时如监听服务开启了溢出恢复，则重新扫描并补发遗漏的事件，
+ * 否则注册遗漏的子目录后触发 {@link fybug.nulll.pdfw.PathKind#ENTRY_OVERFLOW}
  * <br/><br/>
  * 如需解除监听，请直接调用该对象的 {@link #close()}
  *
@@ -34,9 +33,15 @@ import static fybug.nulll.pdfw.loopex.LoopState.WATCH_NEXT;
 public
 class DepthLoop extends Loop<DepthWatch, DepthLoop> {
     // 和该处理程序关联的 key
-    private final List<WatchKey> keyList = new CopyOnWriteArrayList<>();
+    private final Set<WatchKey> keyList = ConcurrentHashMap.newKeySet();
     // 根目录
     final private String rootPath;
+    // 恢复前暂存的实时事件，不在恢复中为 null，由 this 保护
+    private Held held;
+    /** 恢复前暂存的实时事件数量上限，超出后丢弃暂存的事件，恢复后重新扫描对应的目录 */
+    static final int HOLD = 8192;
+    // 系统分隔符是否为 /
+    private static final boolean SEPARATOR = File.separatorChar == '/';
 
     //----------------------------------------------------------------------------------------------
 
@@ -44,56 +49,152 @@ class DepthLoop extends Loop<DepthWatch, DepthLoop> {
     DepthLoop(DepthWatch ws, Path rootpath) {
         super(ws);
         this.rootPath = rootpath.toAbsolutePath().toString();
-        // 新增自动监听
-        addCall(StandardWatchEventKinds.ENTRY_CREATE, (event, pa) -> {
-            var path = Path.of(pa, event.context().toString());
-            // 文件就注册
-            if (Files.isDirectory(path)) {
-                try {
-                    parent.forpath(this, path, WaServer.KINDS_ALL);
-                } catch ( IOException e ) {
-                    e.printStackTrace();
-                }
-            }
-            return WATCH_NEXT;
-        });
-        // 自动解除监听
-        addCall(StandardWatchEventKinds.ENTRY_DELETE, (event, pa) -> {
-            var path = Path.of(pa, event.context().toString());
-            var key = parent.parhToKey(path.toString());
-            // 移除
-            if (key != null) {
-                LOCK.write(() -> {
-                    keyList.remove(key);
-                    key.cancel();
-                    parent.removeLoop(key);
-                });
-            }
-            return WATCH_NEXT;
-        });
     }
 
     //----------------------------------------------------------------------------------------------
 
-    void binKey(WatchKey key) { LOCK.write(() -> keyList.add(key)); }
+    void binKey(WatchKey key) { keyList.add(key); }
+
+    void dropKey(WatchKey key) { keyList.remove(key); }
+
+    /** 解除目录以及其下所有子目录的监听 */
+    void unbind(WatchKey key) { parent.release(this, key); }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 开始暂存实时事件 */
+    synchronized
+    void hold() { held = new Held(); }
+
+    /** 恢复中则暂存事件，超出上限后只记录监听键 */
+    synchronized
+    boolean held(WatchKey key, List<WatchEvent<?>> events) {
+        if (held == null)
+            return false;
+        held.add(key, events);
+        return true;
+    }
+
+    /**
+     * 补发服务停止期间的变化
+     * <p>
+     * 监听服务设置了快照文件且快照中有该目录的记录时，对比快照和磁盘，
+     * 将停止期间的新建、修改、删除作为合成事件交给回调，之后再处理暂存的实时事件<br/>
+     * 需在添加回调后调用，调用前该处理程序的实时事件会被暂存，
+     * 暂存超过 {@link #HOLD} 个事件时丢弃暂存的事件，按溢出处理对应的目录
+     *
+     * @return 补发的事件数量
+     *
+     * @throws IOException 扫描失败
+     * @see DepthWatch#snapshot(Path, long)
+     * @see DepthWatch#autoRestore(long)
+     */
+    public
+    int restore() throws IOException {
+        synchronized ( this ){
+            if (held == null || held.restoring)
+                return 0;
+            held.restoring = true;
+        }
+        int size = 0;
+        try {
+            for ( var e : parent.offline(this).entrySet() ) {
+                size += e.getValue().size();
+                runback(e.getKey(), e.getValue());
+            }
+        } finally {
+            // 处理暂存的实时事件，处理完后恢复直接处理
+            while( true ){
+                Held list;
+                synchronized ( this ){
+                    list = held;
+                    // 已关闭
+                    if (list == null)
+                        break;
+                    if (list.isEmpty()) {
+                        held = null;
+                        break;
+                    }
+                    held = new Held();
+                    held.restoring = true;
+                }
+                for ( Batch v : list.batches )
+                    runback(v.key, v.events);
+                // 丢弃了事件的目录重新扫描，未开启溢出恢复则触发溢出事件
+                for ( WatchKey key : list.dropped )
+                    overflow(key);
+            }
+        }
+        return size;
+    }
 
     /** 根据监控键获取路径 */
+    @Override
     protected
     String keyToPath(WatchKey key) { return parent.keyToPath(key); }
 
+    /** 目录被移动后使用移动后的路径 */
+    @Override
+    protected @NotNull
+    Path keyToDir(WatchKey key) {
+        var path = parent.keyToPath(key);
+        return path == null ? super.keyToDir(key) : Path.of(path);
+    }
+
+    /** 相对根目录的路径 */
+    @Override
+    protected @NotNull
+    String relative(String path, Path context) {
+        var name = context.toString();
+        if (path.length() <= rootPath.length())
+            return SEPARATOR ? name : name.replace(File.separatorChar, '/');
+        var sub = path.substring(rootPath.length() + 1) + '/' + name;
+        return SEPARATOR ? sub : sub.replace(File.separatorChar, '/');
+    }
+
     //----------------------------------------------------------------------------------------------
 
+    /** 更新快照，新建的目录自动监听，删除的目录解除监听，不受过滤规则影响 */
+    @Override
+    protected
+    void track(WatchKey key, WatchEvent<?> event) {
+        parent.record(key, event);
+        var kind = event.kind();
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            // 目录就注册，读取的属性由后续的过滤和回调共用
+            var attr = attr(key, event);
+            if (attr.isDirectory()) {
+                // 被移动进来的目录无需重新注册
+                var attributes = attr.attributes();
+                if (attributes != null && parent.moved(this, attr.path(), attributes.fileKey()))
+                    return;
+                try {
+                    parent.forpath(this, attr.path(), WaServer.KINDS_ALL);
+                } catch ( IOException e ) {
+                    e.printStackTrace();
+                }
+            }
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            var path = parent.keyToPath(key);
+            var sub = path == null ? null : parent.parhToKey(Path.of(path).resolve((Path) event.context()));
+            // 移除，可能是被移动
+            if (sub != null)
+                parent.detach(this, sub);
+        }
+    }
+
     @Override
     protected
-    LoopState runcall(WatchKey key, WatchEvent<?> event, Stream<StateBack> stream) {
-        var state = new LoopState[]{LoopState.WATCH_NEXT};
-        // 运行处理事件
-        stream.anyMatch(v -> {
-            var st = v.apply(event, parent.keyToPath(key));
-            state[0] = st;
-            return st == WATCH_DOME || st == WATCH_CLOSE;
-        });
-        return state[0];
+    void overflow(WatchKey key) {
+        if (parent.snapshot == null) {
+            // 无法补发，只保证子目录都已监听
+            parent.rewatch(this, key);
+            super.overflow(key);
+            return;
+        }
+        var events = parent.rescan(key);
+        if (!events.isEmpty())
+            runback(key, events);
     }
 
     //----------------------------------------------------------------------------------------------
@@ -107,12 +208,58 @@ class DepthLoop extends Loop<DepthWatch, DepthLoop> {
     @Override
     protected
     void close0() {
-        keyList.forEach(v -> {
-            // close Watch
-            v.cancel();
-            // 移除自身
-            parent.removeLoop(v);
-        });
+        var keys = new ArrayList<>(keyList);
         keyList.clear();
+        // close Watch
+        keys.forEach(WatchKey::cancel);
+        // 丢弃暂存的事件
+        synchronized ( this ){
+            held = null;
+        }
+        // 移除自身
+        parent.removeLoop(keys);
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 恢复前暂存的实时事件
+    private static final
+    class Held {
+        // 暂存的事件
+        final List<Batch> batches = new ArrayList<>();
+        // 超出上限后丢弃了事件的监听键
+        final Set<WatchKey> dropped = new LinkedHashSet<>();
+        // 暂存的事件数量
+        int size = 0;
+        // 是否已开始恢复
+        boolean restoring = false;
+
+        void add(WatchKey key, List<WatchEvent<?>> events) {
+            if (dropped.isEmpty() && size + events.size() <= HOLD) {
+                batches.add(new Batch(key, events));
+                size += events.size();
+                return;
+            }
+            // 超出上限，已暂存的事件一并丢弃
+            for ( Batch v : batches )
+                dropped.add(v.key);
+            batches.clear();
+            size = 0;
+            dropped.add(key);
+        }
+
+        boolean isEmpty() { return batches.isEmpty() && dropped.isEmpty(); }
+    }
+
+    // 一个监听键的一批事件
+    private static final
+    class Batch {
+        final WatchKey key;
+        final List<WatchEvent<?>> events;
+
+        Batch(WatchKey key, List<WatchEvent<?>> events) {
+            this.key = key;
+            this.events = events;
+        }
     }
 }
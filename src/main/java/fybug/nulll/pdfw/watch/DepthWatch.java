@@ -2,14 +2,36 @@ package fybug.nulll.pdfw.watch;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
+import fybug.nulll.pdfw.MoveEvent;
+import fybug.nulll.pdfw.OverloadPolicy;
+import fybug.nulll.pdfw.PathEvent;
+import fybug.nulll.pdfw.PathKind;
+import fybug.nulll.pdfw.VirtualThreads;
 import fybug.nulll.pdfw.WaServer;
+import fybug.nulll.pdfw.backend.PollBackend;
+import fybug.nulll.pdfw.backend.WatchBackend;
 import fybug.nulll.pdfw.loopex.DepthDir;
 import fybug.nulll.pdfw.loopex.DepthFile;
 import fybug.nulll.pdfw.loopex.SendDir;
@@ -17,10 +39,17 @@ import fybug.nulll.pdfw.loopex.SendFile;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
 /**
  * <h2>深度路径监控服务.</h2>
  * 监控一组路径，每一个路径对应一个 {@link DepthLoop}<br/>
- * 每一个路径的子路径都会被监控，后续新建的路径也会被监控，删除事件不会往上传。
+ * 每一个路径的子路径都会被监控，后续新建的路径也会被监控，删除事件不会往上传。<br/>
+ * 开启溢出恢复后会记录每个目录的快照，在系统事件溢出时重新扫描目录并补发遗漏的事件<br/>
+ * 设置快照文件后关闭时保存整个目录树，重启后使用 {@link DepthLoop#restore()}
+ * 或 {@link #autoRestore(long)} 补发停止期间的变化<br/>
+ * 开启移动识别后被移动的目录只修改记录的路径，不重新注册子目录
  * <br/><br/>
  * <pre>使用示例：
  *     public static
@@ -48,14 +77,87 @@ import lombok.experimental.Accessors;
  */
 public
 class DepthWatch extends WaServer<DepthLoop> {
-    // 路径映射
-    final HashMap<WatchKey, String> pathmap = new HashMap<>();
-    final HashMap<String, WatchKey> keysmap = new HashMap<>();
+    // 路径树，读取无需加锁，修改在锁中进行
+    final PathTree tree = new PathTree();
+    // 目录快照，未开启溢出恢复则为 null
+    final DirSnapshot snapshot;
+    // 注册目录树的线程池
+    private final ForkJoinPool walkpool;
+    // 是否为自行创建的线程池
+    private final boolean ownpool;
+    // 注册进度回调，可为 null
+    private final RegisterProgress progress;
+
+    // 快照文件，未设置为 null
+    private volatile Path snapfile;
+    // 启动时读取的快照
+    private volatile TreeSnapshot saved;
+    // 定时保存
+    private ScheduledFuture<?> savetask;
+
+    // 识别移动的等待时间，毫秒，小于 1 则不识别
+    private volatile long movewait = 0;
+    // 自动补发的等待时间，毫秒，小于 1 则需手动补发
+    private volatile long restorewait = 0;
+    // 被删除后等待配对的目录，文件标识 -> 等待
+    private final Map<Object, Moving> moving = new ConcurrentHashMap<>();
 
     //----------------------------------------------------------------------------------------------
 
     public
-    DepthWatch(ExecutorService executorService) throws IOException { super(executorService); }
+    DepthWatch(ExecutorService executorService) throws IOException { this(executorService, 0); }
+
+    public
+    DepthWatch(ExecutorService executorService, int parallel) throws IOException
+    { this(executorService, parallel, null); }
+
+    public
+    DepthWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory)
+    throws IOException
+    { this(executorService, parallel, threadFactory, false); }
+
+    public
+    DepthWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory,
+               boolean recover) throws IOException
+    { this(executorService, parallel, threadFactory, recover, 0, null); }
+
+    /**
+     * 构造监听服务
+     *
+     * @param executorService 监听用的线程池
+     * @param parallel        分发事件的工作线程数量，小于 1 则在监听线程中处理
+     * @param threadFactory   未指定线程池时创建监听线程和工作线程的工厂，为 null 则使用普通线程
+     * @param recover         是否开启溢出恢复
+     * @param parallelism     注册目录树的并行数量，小于 1 则使用公共的 {@link ForkJoinPool}
+     * @param progress        注册进度回调，可为 {@code null}
+     */
+    public
+    DepthWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory,
+               boolean recover, int parallelism, RegisterProgress progress) throws IOException
+    { this(executorService, parallel, threadFactory, recover, parallelism, progress, null); }
+
+    /**
+     * 构造监听服务
+     *
+     * @param executorService 监听用的线程池
+     * @param parallel        分发事件的工作线程数量，小于 1 则在监听线程中处理
+     * @param threadFactory   未指定线程池时创建监听线程和工作线程的工厂，为 null 则使用普通线程
+     * @param recover         是否开启溢出恢复
+     * @param parallelism     注册目录树的并行数量，小于 1 则使用公共的 {@link ForkJoinPool}
+     * @param progress        注册进度回调，可为 {@code null}
+     * @param backend         监听后端，为 null 则使用系统监听
+     */
+    public
+    DepthWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory,
+               boolean recover, int parallelism, RegisterProgress progress,
+               WatchBackend backend) throws IOException
+    {
+        super(executorService, parallel, threadFactory, backend);
+        snapshot = recover ? new DirSnapshot() : null;
+        ownpool = parallelism > 0;
+        walkpool = ownpool ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+        this.progress = progress;
+    }
 
     //----------------------------------------------------------------------------------------------
 
@@ -72,9 +174,7 @@ class DepthWatch extends WaServer<DepthLoop> {
     public final
     DepthLoop watchDir(@NotNull Path path) throws IOException {
         checkClose();
-        var loop = new DepthLoop(this, path);
-        forpath(loop, path, WaServer.KINDS_ALL);
-        return loop;
+        return watch(new DepthLoop(this, path), path);
     }
 
     /**
@@ -93,9 +193,7 @@ class DepthWatch extends WaServer<DepthLoop> {
     public final
     DepthDir checkDir(@NotNull Path path) throws IOException {
         checkClose();
-        var loop = new DepthDir(this, path);
-        forpath(loop, path, WaServer.KINDS_ALL);
-        return loop;
+        return watch(new DepthDir(this, path), path);
     }
 
     /**
@@ -114,77 +212,450 @@ class DepthWatch extends WaServer<DepthLoop> {
     public final
     DepthFile checkFil(@NotNull Path path) throws IOException {
         checkClose();
-        var loop = new DepthFile(this, path);
-        forpath(loop, path, WaServer.KINDS_ALL);
-        return loop;
+        return watch(new DepthFile(this, path), path);
     }
 
     //----------------------------------------------------------------------------------------------
 
+    // 注册处理程序，快照中有该目录的记录则暂存实时事件直到恢复
+    private
+    <L extends DepthLoop> L watch(L loop, Path path) throws IOException {
+        var old = saved;
+        var hold = old != null && old.contains(path.toAbsolutePath().toString());
+        if (hold)
+            loop.hold();
+        forpath(loop, path, WaServer.KINDS_ALL);
+        var wait = restorewait;
+        if (hold && wait > 0)
+            timer().schedule(() -> walkpool.execute(() -> {
+                if (loop.isClose())
+                    return;
+                try {
+                    loop.restore();
+                } catch ( IOException e ) {
+                    e.printStackTrace();
+                }
+            }), wait, TimeUnit.MILLISECONDS);
+        return loop;
+    }
+
     // 监听全部子目录
-    void forpath(DepthLoop loop, Path path, WatchEvent.Kind<Path>... kinds) throws IOException {
-        try {
-            Files.walk(path.toAbsolutePath())
-                 // 过滤出目录
-                 .filter(v -> Files.isDirectory(v))
-                 // 绑定监听
-                 .forEach(v -> LOCK.write(() -> {
-                     try {
-                         // 绑定监听
-                         var key = watchPath(v, kinds);
-                         // 记录 Key
-                         loop.binKey(key);
-                         // 记录路径
-                         pathmap.put(key, v.toString());
-                         keysmap.put(v.toString(), key);
-                         // 记录处理程序
-                         sendKey(key, loop);
-                     } catch ( IOException e ) {
-                         throw new errors(e.getMessage());
-                     }
-                 }));
-        } catch ( errors error ) {
-            throw new IOException(error.getMessage());
+    void forpath(DepthLoop loop, Path path, WatchEvent.Kind<Path>[] kinds) throws IOException
+    { DirWalk.walk(walkpool, this, loop, path, kinds, progress); }
+
+    /** 目录是否已由该处理程序监听 */
+    boolean isWatched(DepthLoop loop, Path dir) {
+        var old = tree.pathToKey(dir);
+        return old != null && keymap.get(old) == loop;
+    }
+
+    /** 注册目录，不记录 */
+    WatchKey register(Path dir, WatchEvent.Kind<Path>[] kinds) throws IOException
+    { return watchPath(dir, kinds); }
+
+    /** 在一次加锁中记录一批已注册的目录和它们的文件标识 */
+    void bind(DepthLoop loop, List<Path> dirs, List<WatchKey> keys, List<Object> fileKeys) {
+        if (dirs.isEmpty())
+            return;
+        LOCK.write(() -> {
+            for ( int i = 0; i < dirs.size(); i++ ) {
+                var k = keys.get(i);
+                // 已由该处理程序监听
+                if (keymap.get(k) == loop)
+                    continue;
+                // 记录 Key
+                loop.binKey(k);
+                // 记录路径
+                tree.put(dirs.get(i), k).fileKey = fileKeys.get(i);
+                // 记录处理程序
+                sendKey(k, loop);
+            }
+        });
+    }
+
+    /** 记录一批目录的快照 */
+    void scan(List<Path> dirs, List<WatchKey> keys) {
+        if (snapshot == null)
+            return;
+        for ( int i = 0; i < dirs.size(); i++ ) {
+            try {
+                snapshot.scan(keys.get(i), dirs.get(i));
+            } catch ( IOException e ) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
-    /** 移除当前处理程序 */
-    void removeLoop(WatchKey key) {
+    /** 在一次加锁中移除一批监听键的处理程序 */
+    void removeLoop(Collection<WatchKey> keys) {
         LOCK.write(() -> {
-            keymap.remove(key);
-            if (pathmap.containsKey(key))
-                keysmap.remove(pathmap.remove(key));
+            for ( WatchKey key : keys )
+                forget(key);
         });
     }
 
-    /** 根据路径获取监控键 */
-    WatchKey parhToKey(String path) {
-        return LOCK.read(() -> {
-            if (keysmap.containsKey(path))
-                return keysmap.get(path);
-            return null;
+    /**
+     * 解除目录以及其下所有属于该处理程序的子目录
+     * <p>
+     * 子目录被移出监听范围时监听键依旧有效，需和目录一起解除
+     */
+    void release(DepthLoop loop, WatchKey key) {
+        LOCK.write(() -> {
+            var keys = new ArrayList<WatchKey>();
+            keys.add(key);
+            var node = tree.node(key);
+            if (node != null) {
+                tree.forEach(node, v -> {
+                    if (v.key != key && keymap.get(v.key) == loop)
+                        keys.add(v.key);
+                });
+            }
+            for ( WatchKey k : keys ) {
+                k.cancel();
+                loop.dropKey(k);
+                forget(k);
+            }
         });
     }
 
-    /** 根据监控键获取路径 */
-    String keyToPath(WatchKey key) {return LOCK.read(() -> pathmap.get(key));}
+    // 移除监听键的记录
+    private
+    void forget(WatchKey key) {
+        keymap.remove(key);
+        tree.remove(key);
+        if (snapshot != null)
+            snapshot.remove(key);
+    }
+
+    /** 同时移除路径树中的记录 */
+    @Override
+    protected
+    void reap(Collection<WatchKey> keys) {
+        for ( WatchKey key : keys ) {
+            var loop = keymap.get(key);
+            if (loop != null)
+                loop.dropKey(key);
+            forget(key);
+        }
+    }
 
     //----------------------------------------------------------------------------------------------
 
+    /** 根据事件更新快照 */
+    void record(WatchKey key, WatchEvent<?> event) {
+        if (snapshot == null)
+            return;
+        var node = tree.node(key);
+        if (node != null)
+            snapshot.update(key, node.toPath(), event);
+    }
+
+    /**
+     * 重新扫描溢出的目录
+     *
+     * @return 遗漏的事件，未开启溢出恢复或目录已不存在则为空
+     */
+    List<WatchEvent<?>> rescan(WatchKey key) {
+        var node = tree.node(key);
+        if (snapshot == null || node == null)
+            return List.of();
+        try {
+            return snapshot.rescan(key, node.toPath());
+        } catch ( IOException e ) {
+            return List.of();
+        }
+    }
+
+    /** 注册溢出的目录下未监听的子目录，不跟随符号链接 */
+    void rewatch(DepthLoop loop, WatchKey key) {
+        var node = tree.node(key);
+        if (node == null)
+            return;
+        try ( var list = Files.newDirectoryStream(node.toPath(),
+                                                  p -> Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) ) {
+            for ( Path dir : list ) {
+                if (!isWatched(loop, dir))
+                    forpath(loop, dir, WaServer.KINDS_ALL);
+            }
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 根据路径获取监控键 */
+    WatchKey parhToKey(Path path) { return tree.pathToKey(path); }
+
     @Override
     protected
-    void close0() {
-        super.close0();
-        pathmap.clear();
-        keysmap.clear();
+    void route(WatchKey key, List<WatchEvent<?>> events) {
+        var loop = keymap.get(key);
+        if (loop == null)
+            return;
+        if (movewait > 0 && events.size() > 1)
+            events = pair(loop, key, events);
+        // 恢复中暂存
+        if (!loop.held(key, events))
+            super.route(key, events);
     }
 
+    // Move
     //----------------------------------------------------------------------------------------------
 
+    /**
+     * 开启目录移动识别
+     * <p>
+     * 被监听的目录被删除后等待一段时间再解除监听，期间该处理程序中新建了文件标识相同的目录时视为移动，
+     * 只修改记录的路径，不再重新遍历和注册子目录<br/>
+     * 同一目录下的重命名合并为一个 {@link PathKind#ENTRY_MOVE} 事件，
+     * 移动到其他目录依旧为删除和新建事件
+     *
+     * @param millis 等待的时间，毫秒，小于 1 则关闭
+     *
+     * @return this
+     *
+     * @see MoveEvent
+     */
+    @NotNull
+    public
+    DepthWatch detectMoves(long millis) {
+        movewait = millis;
+        return this;
+    }
+
+    /** 目录被删除，开启移动识别时等待配对后再解除监听 */
+    void detach(DepthLoop loop, WatchKey key) {
+        var wait = movewait;
+        var node = tree.node(key);
+        var id = node == null ? null : node.fileKey;
+        var moving = new Moving(loop, key);
+        if (wait < 1 || id == null || this.moving.putIfAbsent(id, moving) != null) {
+            loop.unbind(key);
+            return;
+        }
+        moving.task = timer().schedule(() -> {
+            if (this.moving.remove(id, moving))
+                loop.unbind(key);
+        }, wait, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 新建的目录是否为等待配对的目录，是则移动记录的路径
+     *
+     * @return 是否已移动，移动失败时解除原来的监听
+     */
+    boolean moved(DepthLoop loop, Path path, Object fileKey) {
+        if (fileKey == null || moving.isEmpty())
+            return false;
+        var wait = moving.get(fileKey);
+        if (wait == null || wait.loop != loop || !moving.remove(fileKey, wait))
+            return false;
+        if (wait.task != null)
+            wait.task.cancel(false);
+        if (rebase(wait.key, path))
+            return true;
+        loop.unbind(wait.key);
+        return false;
+    }
+
+    // 合并同一目录下被重命名的目录
+    private
+    List<WatchEvent<?>> pair(DepthLoop loop, WatchKey key, List<WatchEvent<?>> events) {
+        Map<Object, Integer> deleted = null;
+        List<WatchEvent<?>> list = null;
+        Path dir = null;
+        for ( int i = 0, size = events.size(); i < size; i++ ) {
+            var event = events.get(i);
+            if (event.kind() == ENTRY_DELETE) {
+                if (dir == null) {
+                    var path = tree.keyToPath(key);
+                    if (path == null)
+                        return events;
+                    dir = Path.of(path);
+                }
+                var node = tree.node(dir.resolve((Path) event.context()));
+                if (node != null && node.fileKey != null && node.key != null &&
+                    keymap.get(node.key) == loop)
+                {
+                    if (deleted == null)
+                        deleted = new HashMap<>();
+                    deleted.put(node.fileKey, i);
+                }
+            } else if (event.kind() == ENTRY_CREATE && deleted != null) {
+                var path = dir.resolve((Path) event.context());
+                var from = deleted.get(fileKey(path));
+                if (from == null)
+                    continue;
+                var old = (Path) events.get(from).context();
+                var node = tree.node(dir.resolve(old));
+                if (node == null || !rebase(node.key, path))
+                    continue;
+                deleted.values().remove(from);
+                if (list == null)
+                    list = new ArrayList<>(events);
+                list.set(from, null);
+                list.set(i, new MoveEvent(old, (Path) event.context()));
+            }
+        }
+        if (list == null)
+            return events;
+        list.removeIf(Objects::isNull);
+        return list;
+    }
+
+    // 读取目录的文件标识，不是目录返回 null
     private static
-    class errors extends RuntimeException {
-        public
-        errors(String message) { super(message); }
+    Object fileKey(Path path) {
+        try {
+            var attr = Files.readAttributes(path, BasicFileAttributes.class,
+                                            LinkOption.NOFOLLOW_LINKS);
+            return attr.isDirectory() ? attr.fileKey() : null;
+        } catch ( IOException e ) {
+            return null;
+        }
+    }
+
+    // 移动监听键对应的节点
+    private
+    boolean rebase(WatchKey key, Path to) {
+        return LOCK.write(() -> {
+            var node = tree.node(key);
+            return node != null && tree.move(node, to);
+        });
+    }
+
+    // Snapshot
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 设置快照文件
+     * <p>
+     * 文件已存在则读取，之后注册的目录在快照中有记录时暂存实时事件，
+     * 直到调用 {@link DepthLoop#restore()} 补发停止期间的变化<br/>
+     * 服务关闭时保存快照，需在注册目录前设置
+     *
+     * @param file   快照文件
+     * @param millis 定时保存的间隔，毫秒，小于 1 则只在关闭时保存
+     *
+     * @return this
+     *
+     * @throws IOException 快照文件无法读取
+     */
+    @NotNull
+    public
+    DepthWatch snapshot(@NotNull Path file, long millis) throws IOException {
+        checkClose();
+        file = file.toAbsolutePath();
+        saved = Files.exists(file) ? TreeSnapshot.read(file) : null;
+        snapfile = file;
+        LOCK.write(() -> {
+            if (savetask != null)
+                savetask.cancel(false);
+            savetask = millis < 1 ? null : timer().scheduleWithFixedDelay(() -> {
+                try {
+                    saveSnapshot();
+                } catch ( IOException e ) {
+                    e.printStackTrace();
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+        });
+        return this;
+    }
+
+    /**
+     * 开启自动补发
+     * <p>
+     * 快照中有记录的目录注册后等待一段时间自动调用 {@link DepthLoop#restore()}，
+     * 回调需在此之前添加，已手动补发则不做处理
+     *
+     * @param millis 等待时间，毫秒，小于 1 则需手动补发
+     *
+     * @return this
+     */
+    @NotNull
+    public
+    DepthWatch autoRestore(long millis) {
+        restorewait = millis;
+        return this;
+    }
+
+    /**
+     * 保存快照
+     * <p>
+     * 并行扫描所有监听的目录并写入快照文件，未设置快照文件则不做处理
+     */
+    public
+    void saveSnapshot() throws IOException {
+        var file = snapfile;
+        if (file == null)
+            return;
+        var dirs = new ArrayList<Path>(tree.size());
+        for ( WatchKey key : keymap.keySet() ) {
+            var node = tree.node(key);
+            if (node != null)
+                dirs.add(node.toPath());
+        }
+        TreeSnapshot.scan(walkpool, dirs).write(file);
+    }
+
+    /**
+     * 对比快照和磁盘，得出处理程序的目录在服务停止期间的变化
+     *
+     * @return 监听键 -> 合成事件，父目录已不存在的路径不生成事件
+     */
+    Map<WatchKey, List<WatchEvent<?>>> offline(DepthLoop loop) throws IOException {
+        var old = saved;
+        var root = loop.toPath();
+        if (old == null || !old.contains(root))
+            return Map.of();
+
+        // 扫描处理程序的所有目录
+        var node = tree.node(Path.of(root));
+        if (node == null)
+            return Map.of();
+        var dirs = new ArrayList<Path>();
+        tree.forEach(node, v -> {
+            if (keymap.get(v.key) == loop)
+                dirs.add(v.toPath());
+        });
+        var now = TreeSnapshot.scan(walkpool, dirs);
+
+        // 按父目录的监听键分组
+        var map = new LinkedHashMap<WatchKey, List<WatchEvent<?>>>();
+        old.diff(now, root, (path, kind) -> {
+            var p = Path.of(path);
+            var key = tree.pathToKey(p.getParent());
+            if (key != null)
+                map.computeIfAbsent(key, k -> new ArrayList<>())
+                   .add(new PathEvent(kind, 1, p.getFileName()));
+        });
+        return map;
+    }
+
+    /** 根据监控键获取路径 */
+    String keyToPath(WatchKey key) { return tree.keyToPath(key); }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    protected
+    void close0() {
+        // 保存快照
+        if (snapfile != null) {
+            if (savetask != null)
+                savetask.cancel(false);
+            try {
+                saveSnapshot();
+            } catch ( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+        moving.clear();
+        super.close0();
+        LOCK.write(tree::clear);
+        if (ownpool)
+            walkpool.shutdownNow();
+        if (snapshot != null)
+            snapshot.clear();
     }
 
     /*--------------------------------------------------------------------------------------------*/
@@ -196,7 +667,17 @@ class DepthWatch extends WaServer<DepthLoop> {
 
     /**
      * <h2>监听服务构造工具.</h2>
-     * 使用 {@link #pool(ExecutorService)} 修改监听用的线程池
+     * 使用 {@link #pool(ExecutorService)} 修改监听用的线程池<br/>
+     * 使用 {@link #parallel(int)} 按监听键分片并行处理事件<br/>
+     * 使用 {@link #virtual(boolean)} 使用虚拟线程进行监听和分发<br/>
+     * 使用 {@link #recover(boolean)} 开启溢出恢复<br/>
+     * 使用 {@link #parallelism(int)} 设置注册目录树的并行数量<br/>
+     * 使用 {@link #progress(RegisterProgress)} 设置注册进度回调<br/>
+     * 使用 {@link #backend(WatchBackend)} 替换监听后端<br/>
+     * 使用 {@link #jmx(boolean)} 通过 JMX 发布统计<br/>
+     * 使用 {@link #queue(int)} 和 {@link #overload(OverloadPolicy)} 限制分发队列<br/>
+     * 使用 {@link #snapshot(Path)} 设置快照文件<br/>
+     * 使用 {@link #moveWait(long)} 开启目录移动识别
      *
      * @author fybug
      * @version 0.0.1
@@ -207,10 +688,130 @@ class DepthWatch extends WaServer<DepthLoop> {
     class Build {
         /** 监听执行的线程池 */
         @Setter private ExecutorService pool = null;
+        /**
+         * 分发事件的工作线程数量
+         * <p>
+         * 大于 0 时每个监听键的事件会分片到对应的工作线程中处理，同一个监听键的事件保持顺序，
+         * 不同监听键的事件并行处理，此时回调需要线程安全
+         */
+        @Setter private int parallel = 0;
+        /**
+         * 是否使用虚拟线程
+         * <p>
+         * 未指定线程池时监听线程和分发的工作线程均使用虚拟线程创建，jdk 不支持时使用普通线程
+         *
+         * @see VirtualThreads
+         */
+        @Setter private boolean virtual = false;
+        /**
+         * 是否开启溢出恢复
+         * <p>
+         * 开启后会记录每个监听目录的快照，系统事件溢出时重新扫描该目录，
+         * 补发遗漏的新建、修改、删除事件，并监听遗漏的新目录
+         */
+        @Setter private boolean recover = false;
+        /**
+         * 注册目录树的并行数量
+         * <p>
+         * 注册时使用 fork/join 并行遍历和注册目录树，小于 1 则使用公共的 {@link ForkJoinPool}
+         */
+        @Setter private int parallelism = 0;
+        /**
+         * 注册进度回调
+         *
+         * @see RegisterProgress
+         */
+        @Setter private RegisterProgress progress = null;
+        /**
+         * 监听后端
+         * <p>
+         * 为 null 则使用系统监听，在 NFS、FUSE 等系统不推送事件的挂载点可使用 {@link PollBackend}
+         *
+         * @see WatchBackend
+         */
+        @Setter private WatchBackend backend = null;
+        /**
+         * 是否通过 JMX 发布统计
+         *
+         * @see WaServer#exportMBean()
+         */
+        @Setter private boolean jmx = false;
+        /**
+         * 每个工作线程队列中的事件数量上限
+         * <p>
+         * 只在开启工作线程时有效，小于 1 则不限制
+         *
+         * @see WaServer#queue(int, OverloadPolicy)
+         */
+        @Setter private int queue = 0;
+        /** 队列满时的处理方式 */
+        @Setter private OverloadPolicy overload = OverloadPolicy.BLOCK;
+        /**
+         * 快照文件
+         * <p>
+         * 关闭时保存整个目录树，重启后补发停止期间的变化
+         *
+         * @see DepthWatch#snapshot(Path, long)
+         */
+        @Setter private Path snapshot = null;
+        /** 定时保存快照的间隔，毫秒，小于 1 则只在关闭时保存 */
+        @Setter private long snapshotInterval = 0;
+        /**
+         * 自动补发的等待时间，毫秒，小于 1 则需手动补发
+         *
+         * @see DepthWatch#autoRestore(long)
+         */
+        @Setter private long autoRestore = 0;
+        /**
+         * 识别目录移动的等待时间，毫秒，小于 1 则不识别
+         *
+         * @see DepthWatch#detectMoves(long)
+         */
+        @Setter private long moveWait = 0;
 
         /** 构造监听服务 */
         @NotNull
         public
-        DepthWatch build() throws IOException {return new DepthWatch(pool);}
+        DepthWatch build() throws IOException
+        {
+            var watch = new DepthWatch(pool, parallel, virtual ? VirtualThreads.factory() : null,
+                                       recover, parallelism, progress, backend);
+            watch.queue(queue, overload);
+            watch.detectMoves(moveWait);
+            watch.autoRestore(autoRestore);
+            if (jmx) {
+                try {
+                    watch.exportMBean();
+                } catch ( JMException e ) {
+                    watch.close();
+                    throw new IOException(e);
+                }
+            }
+            if (snapshot != null) {
+                try {
+                    watch.snapshot(snapshot, snapshotInterval);
+                } catch ( IOException e ) {
+                    watch.close();
+                    throw e;
+                }
+            }
+            return watch;
+        }
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 等待配对的被删除目录
+    private static final
+    class Moving {
+        final DepthLoop loop;
+        final WatchKey key;
+        // 到期后解除监听的任务
+        volatile ScheduledFuture<?> task;
+
+        Moving(DepthLoop loop, WatchKey key) {
+            this.loop = loop;
+            this.key = key;
+        }
     }
 }
@@ -0,0 +1,238 @@
+package fybug.nulll.pdfw.watch;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fybug.nulll.pdfw.loopex.FileSend;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * <h2>目录分发器.</h2>
+ * 同一个目录的所有 {@link SendLoop} 共用一个监听键，由该对象分发事件<br/>
+ * 目录类的处理程序接收全部事件，{@link FileSend} 按文件名索引，只接收该文件的事件<br/>
+ * 监听键注册的事件类型为所有处理程序的并集，每个处理程序只接收自己声明的类型
+ * <br/><br/>
+ * 修改由 {@link SendWatch} 的锁保护，分发时无需加锁
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see SendWatch
+ * @since watch 0.0.1
+ */
+final
+class DirMux {
+    /** 全部类型的掩码 */
+    static final int KINDS_ALL = 0b111;
+    // 空的处理程序列表
+    private static final SendLoop[] EMPTY = new SendLoop[0];
+
+    /** 共用的监听键 */
+    final WatchKey key;
+    /** 监听的目录 */
+    final Path dir;
+    /** 已注册的事件类型掩码，由锁保护 */
+    int kinds = 0;
+
+    // 目录类的处理程序，修改时整体替换
+    private volatile SendLoop[] dirs = EMPTY;
+    // 文件名 -> 文件处理程序，每一项修改时整体替换
+    private final Map<Path, SendLoop[]> files = new ConcurrentHashMap<>();
+    // 处理程序数量，由锁保护
+    private int size = 0;
+
+    //----------------------------------------------------------------------------------------------
+
+    DirMux(WatchKey key, Path dir) {
+        this.key = key;
+        this.dir = dir;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 获取事件类型的掩码，无法识别的类型返回全部 */
+    static
+    int mask(WatchEvent.Kind<?> kind) {
+        if (kind == ENTRY_CREATE)
+            return 0b001;
+        if (kind == ENTRY_MODIFY)
+            return 0b010;
+        if (kind == ENTRY_DELETE)
+            return 0b100;
+        return KINDS_ALL;
+    }
+
+    /** 获取一组事件类型的掩码 */
+    static
+    int mask(WatchEvent.Kind<?>[] kinds) {
+        int mask = 0;
+        for ( WatchEvent.Kind<?> kind : kinds )
+            mask |= mask(kind);
+        return mask;
+    }
+
+    /** 根据掩码生成事件类型 */
+    @SuppressWarnings( "unchecked" )
+    static
+    WatchEvent.Kind<Path>[] kinds(int mask) {
+        var list = new ArrayList<WatchEvent.Kind<Path>>(3);
+        if ((mask & 0b001) != 0)
+            list.add(ENTRY_CREATE);
+        if ((mask & 0b010) != 0)
+            list.add(ENTRY_MODIFY);
+        if ((mask & 0b100) != 0)
+            list.add(ENTRY_DELETE);
+        return list.toArray((WatchEvent.Kind<Path>[]) new WatchEvent.Kind<?>[0]);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 添加处理程序 */
+    void add(SendLoop loop) {
+        if (loop instanceof FileSend) {
+            files.merge(loop.name, new SendLoop[]{loop}, DirMux::concat);
+        } else {
+            dirs = concat(dirs, new SendLoop[]{loop});
+        }
+        size++;
+    }
+
+    /**
+     * 移除处理程序
+     *
+     * @return 是否已经没有处理程序
+     */
+    boolean remove(SendLoop loop) {
+        boolean removed;
+        if (loop instanceof FileSend) {
+            var old = files.get(loop.name);
+            var now = old == null ? null : without(old, loop);
+            removed = now != old;
+            if (removed) {
+                if (now.length == 0)
+                    files.remove(loop.name);
+                else
+                    files.put(loop.name, now);
+            }
+        } else {
+            var old = dirs;
+            dirs = without(old, loop);
+            removed = dirs != old;
+        }
+        if (removed)
+            size--;
+        return size <= 0;
+    }
+
+    /** 处理程序数量 */
+    int size() { return size; }
+
+    /** 获取全部处理程序 */
+    List<SendLoop> loops() {
+        var list = new ArrayList<>(Arrays.asList(dirs));
+        files.values().forEach(v -> list.addAll(Arrays.asList(v)));
+        return list;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 分发监听键一次触发的全部事件 */
+    void route(List<WatchEvent<?>> events) {
+        for ( SendLoop loop : dirs )
+            send(loop, events);
+
+        if (files.isEmpty())
+            return;
+        // 单个事件直接查找，无需分组
+        if (events.size() == 1) {
+            var event = events.get(0);
+            if (event.kind() == OVERFLOW) {
+                files.values().forEach(v -> sendAll(v, events));
+            } else {
+                var loops = files.get(event.context());
+                if (loops != null)
+                    sendAll(loops, events);
+            }
+            return;
+        }
+
+        // 按文件分组，保持每个文件的事件顺序
+        var group = new LinkedHashMap<SendLoop[], List<WatchEvent<?>>>();
+        for ( WatchEvent<?> event : events ) {
+            if (event.kind() == OVERFLOW) {
+                for ( SendLoop[] loops : files.values() )
+                    group.computeIfAbsent(loops, k -> new ArrayList<>()).add(event);
+                continue;
+            }
+            var loops = files.get(event.context());
+            if (loops != null)
+                group.computeIfAbsent(loops, k -> new ArrayList<>()).add(event);
+        }
+        group.forEach(DirMux::sendAll);
+    }
+
+    // 分发到一组处理程序
+    private static
+    void sendAll(SendLoop[] loops, List<WatchEvent<?>> events) {
+        for ( SendLoop loop : loops )
+            send(loop, events);
+    }
+
+    // 过滤出处理程序声明的类型后分发
+    private static
+    void send(SendLoop loop, List<WatchEvent<?>> events) {
+        var kinds = loop.kinds;
+        if (kinds != KINDS_ALL) {
+            List<WatchEvent<?>> list = null;
+            for ( int i = 0, size = events.size(); i < size; i++ ) {
+                var event = events.get(i);
+                if ((mask(event.kind()) & kinds) != 0 || event.kind() == OVERFLOW) {
+                    if (list != null)
+                        list.add(event);
+                } else if (list == null) {
+                    // 第一个不需要的事件，复制之前的事件
+                    list = new ArrayList<>(events.subList(0, i));
+                }
+            }
+            if (list != null) {
+                if (list.isEmpty())
+                    return;
+                events = list;
+            }
+        }
+        loop.send(events);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 连接处理程序列表
+    private static
+    SendLoop[] concat(SendLoop[] old, SendLoop[] add) {
+        var n = Arrays.copyOf(old, old.length + add.length);
+        System.arraycopy(add, 0, n, old.length, add.length);
+        return n;
+    }
+
+    // 移除处理程序，不存在则返回原列表
+    private static
+    SendLoop[] without(SendLoop[] old, SendLoop loop) {
+        for ( int i = 0; i < old.length; i++ ) {
+            if (old[i] == loop) {
+                var n = new SendLoop[old.length - 1];
+                System.arraycopy(old, 0, n, 0, i);
+                System.arraycopy(old, i + 1, n, i, n.length - i);
+                return n;
+            }
+        }
+        return old;
+    }
+}
@@ -0,0 +1,158 @@
+package fybug.nulll.pdfw.watch;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fybug.nulll.pdfw.MoveEvent;
+import fybug.nulll.pdfw.PathEvent;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>目录快照.</h2>
+ * 记录每个监听目录下的直接子项的类型、大小和修改时间<br/>
+ * 在事件溢出后重新扫描目录并和快照对比，得出遗漏的事件
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see DepthWatch
+ * @since watch 0.0.1
+ */
+final
+class DirSnapshot {
+    // 监听键 -> 子项名称 -> 记录
+    private final Map<WatchKey, Map<String, Stamp>> dirs = new ConcurrentHashMap<>();
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 扫描并记录目录 */
+    void scan(WatchKey key, Path dir) throws IOException { dirs.put(key, read(dir)); }
+
+    /** 根据事件更新记录 */
+    void update(WatchKey key, Path dir, WatchEvent<?> event) {
+        var map = dirs.get(key);
+        if (map == null || !(event.context() instanceof Path))
+            return;
+        var name = event.context().toString();
+
+        if (event.kind() == ENTRY_DELETE) {
+            map.remove(name);
+        } else {
+            // 重命名
+            if (event instanceof MoveEvent)
+                map.remove(((MoveEvent) event).from().toString());
+            var stamp = stamp(dir.resolve(name));
+            if (stamp == null)
+                map.remove(name);
+            else
+                map.put(name, stamp);
+        }
+    }
+
+    /**
+     * 重新扫描目录
+     *
+     * @return 和快照对比后遗漏的事件
+     */
+    List<WatchEvent<?>> rescan(WatchKey key, Path dir) throws IOException {
+        var now = read(dir);
+        var old = dirs.put(key, now);
+        if (old == null)
+            return List.of();
+
+        var events = new ArrayList<WatchEvent<?>>();
+        // 删除的
+        old.keySet().forEach(v -> {
+            if (!now.containsKey(v))
+                events.add(new PathEvent(ENTRY_DELETE, 1, Path.of(v)));
+        });
+        // 新建和修改的
+        now.forEach((k, v) -> {
+            var o = old.get(k);
+            if (o == null)
+                events.add(new PathEvent(ENTRY_CREATE, 1, Path.of(k)));
+            else if (!o.equals(v))
+                events.add(new PathEvent(ENTRY_MODIFY, 1, Path.of(k)));
+        });
+        return events;
+    }
+
+    /** 移除记录 */
+    void remove(WatchKey key) { dirs.remove(key); }
+
+    /** 清空记录 */
+    void clear() { dirs.clear(); }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 并行读取目录下所有子项
+    private static
+    Map<String, Stamp> read(Path dir) throws IOException {
+        List<Path> list;
+        try ( var stream = Files.list(dir) ) {
+            list = stream.collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        }
+
+        var map = new ConcurrentHashMap<String, Stamp>(Math.max(list.size() * 4 / 3, 16));
+        list.parallelStream().forEach(v -> {
+            var stamp = stamp(v);
+            if (stamp != null)
+                map.put(v.getFileName().toString(), stamp);
+        });
+        return map;
+    }
+
+    // 读取记录，不存在返回 null
+    private static
+    Stamp stamp(Path path) {
+        try {
+            var attr = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Stamp(attr.isDirectory(), attr.size(), attr.lastModifiedTime().toMillis());
+        } catch ( IOException e ) {
+            return null;
+        }
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 子项记录
+    private static final
+    class Stamp {
+        final boolean dir;
+        final long size;
+        final long time;
+
+        Stamp(boolean dir, long size, long time) {
+            this.dir = dir;
+            this.size = size;
+            this.time = time;
+        }
+
+        @Override
+        public
+        boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Stamp))
+                return false;
+            var s = (Stamp) o;
+            return dir == s.dir && size == s.size && time == s.time;
+        }
+
+        @Override
+        public
+        int hashCode() { return Long.hashCode(size) * 31 + Long.hashCode(time); }
+    }
+}
@@ -0,0 +1,214 @@
+package fybug.nulll.pdfw.watch;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>目录树注册任务.</h2>
+ * 使用 fork/join 并行遍历并注册目录树<br/>
+ * 每个任务注册一批目录，在一次加锁中记录整批目录后再列出它们的子目录分给子任务，
+ * 保证列出子目录时父目录已能接收新建事件
+ * <br/><br/>
+ * 符号链接指向的目录会被注册，但不会进入<br/>
+ * 列出子目录时读取的文件标识随目录一起记录，用于识别目录的移动
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see DepthWatch
+ * @since watch 0.0.1
+ */
+final
+class DirWalk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /** 每个任务处理的最大目录数量 */
+    static final int BATCH = 256;
+    /** 报告进度的间隔目录数量 */
+    static final int REPORT = 4096;
+
+    // 当前注册
+    private final Walk walk;
+    // 该任务处理的目录
+    private final List<Path> dirs;
+    // 目录的文件标识，和目录一一对应，未知为 null
+    private final List<Object> ids;
+
+    //----------------------------------------------------------------------------------------------
+
+    private
+    DirWalk(Walk walk, List<Path> dirs, List<Object> ids) {
+        this.walk = walk;
+        this.dirs = dirs;
+        this.ids = ids;
+    }
+
+    /**
+     * 注册目录树
+     *
+     * @param pool     执行的线程池
+     * @param watch    注册到的监听服务
+     * @param loop     注册到的处理程序
+     * @param root     根目录
+     * @param kinds    监听的类型
+     * @param progress 进度回调，可为 {@code null}
+     *
+     * @return 注册的目录数量
+     */
+    static
+    long walk(ForkJoinPool pool, DepthWatch watch, DepthLoop loop, Path root,
+              WatchEvent.Kind<Path>[] kinds, RegisterProgress progress) throws IOException
+    {
+        root = root.toAbsolutePath();
+        // 根路径不是目录则不注册
+        BasicFileAttributes attr;
+        try {
+            attr = Files.readAttributes(root, BasicFileAttributes.class);
+        } catch ( IOException e ) {
+            if (Files.notExists(root, LinkOption.NOFOLLOW_LINKS))
+                throw new NoSuchFileException(root.toString());
+            return 0;
+        }
+        if (!attr.isDirectory())
+            return 0;
+
+        var walk = new Walk(watch, loop, root, kinds, progress);
+        try {
+            pool.invoke(new DirWalk(walk, List.of(root),
+                                    Collections.singletonList(attr.fileKey())));
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        }
+        if (progress != null)
+            progress.progress(root, walk.count.get(), System.nanoTime() - walk.start, true);
+        return walk.count.get();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    @Override
+    protected
+    void compute() {
+        // 注册本批目录，一次加锁记录整批
+        register(dirs, ids);
+
+        // 列出子目录，按批分给子任务
+        var subs = new ArrayList<DirWalk>();
+        var batch = new ArrayList<Path>(BATCH);
+        var batchIds = new ArrayList<Object>(BATCH);
+        var links = new ArrayList<Path>();
+        for ( Path dir : dirs ) {
+            try ( var stream = Files.newDirectoryStream(dir) ) {
+                for ( Path sub : stream ) {
+                    var attr = attr(sub);
+                    if (attr == null)
+                        continue;
+                    if (attr.isDirectory()) {
+                        batch.add(sub);
+                        batchIds.add(attr.fileKey());
+                        if (batch.size() == BATCH) {
+                            subs.add(new DirWalk(walk, batch, batchIds));
+                            batch = new ArrayList<>(BATCH);
+                            batchIds = new ArrayList<>(BATCH);
+                        }
+                    } else if (attr.isSymbolicLink() && Files.isDirectory(sub)) {
+                        links.add(sub);
+                    }
+                }
+            } catch ( NoSuchFileException e ) {
+                // 已被删除
+            } catch ( IOException e ) {
+                throw new UncheckedIOException(e);
+            } catch ( DirectoryIteratorException e ) {
+                throw new UncheckedIOException(e.getCause());
+            }
+        }
+        if (!batch.isEmpty())
+            subs.add(new DirWalk(walk, batch, batchIds));
+
+        // 符号链接只注册不进入，不识别移动
+        if (!links.isEmpty())
+            register(links, Collections.nCopies(links.size(), null));
+        invokeAll(subs);
+    }
+
+    // 注册一批目录，已由该处理程序监听的跳过
+    private
+    void register(List<Path> dirs, List<Object> ids) {
+        var watch = walk.watch;
+        var paths = new ArrayList<Path>(dirs.size());
+        var keys = new ArrayList<WatchKey>(dirs.size());
+        var fileKeys = new ArrayList<>(dirs.size());
+        for ( int i = 0; i < dirs.size(); i++ ) {
+            var dir = dirs.get(i);
+            if (watch.isWatched(walk.loop, dir))
+                continue;
+            try {
+                keys.add(watch.register(dir, walk.kinds));
+                paths.add(dir);
+                fileKeys.add(ids.get(i));
+            } catch ( IOException e ) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        watch.bind(walk.loop, paths, keys, fileKeys);
+        watch.scan(paths, keys);
+        walk.report(paths.size());
+    }
+
+    // 读取属性，不跟随符号链接，不存在返回 null
+    private static
+    BasicFileAttributes attr(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch ( IOException e ) {
+            return null;
+        }
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 一次注册共用的数据
+    private static final
+    class Walk {
+        final DepthWatch watch;
+        final DepthLoop loop;
+        final Path root;
+        final WatchEvent.Kind<Path>[] kinds;
+        final RegisterProgress progress;
+        final long start = System.nanoTime();
+        // 已注册数量
+        final AtomicLong count = new AtomicLong();
+
+        Walk(DepthWatch watch, DepthLoop loop, Path root, WatchEvent.Kind<Path>[] kinds,
+             RegisterProgress progress)
+        {
+            this.watch = watch;
+            this.loop = loop;
+            this.root = root;
+            this.kinds = kinds;
+            this.progress = progress;
+        }
+
+        // 记录数量，每经过一个间隔报告一次进度
+        void report(int add) {
+            if (add == 0)
+                return;
+            var now = count.addAndGet(add);
+            if (progress != null && now / REPORT != (now - add) / REPORT)
+                progress.progress(root, now, System.nanoTime() - start, false);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package fybug.nulll.pdfw.watch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * <h2>路径树.</h2>
+ * 按路径分段存放监听目录的前缀树，每个路径分段只保存一次，相同的分段名称共用同一个字符串<br/>
+ * 支持监听键和路径的互相查询，以及遍历一个目录下的所有监听目录<br/>
+ * 目录被移动时只需移动对应的节点，子节点的路径随之改变
+ * <br/><br/>
+ * 子节点使用按名称排序的数组，修改时整体替换，读取无需加锁<br/>
+ * 修改需要在 {@link DepthWatch} 的锁中进行
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see DepthWatch
+ * @since watch 0.0.1
+ */
+final
+class PathTree {
+    // 空的子节点列表
+    private static final Node[] EMPTY = new Node[0];
+
+    // 根路径 -> 根节点
+    private final Map<String, Node> roots = new ConcurrentHashMap<>();
+    // 监听键 -> 节点
+    private final Map<WatchKey, Node> keys = new ConcurrentHashMap<>();
+    // 共用的分段名称，由锁保护
+    private final Map<String, Segment> segments = new HashMap<>();
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 绑定路径和监听键
+     *
+     * @param path 绝对路径
+     * @param key  监听键
+     *
+     * @return 路径对应的节点
+     */
+    @NotNull
+    Node put(@NotNull Path path, @NotNull WatchKey key) {
+        var root = path.getRoot().toString();
+        var node = roots.computeIfAbsent(root, v -> new Node(null, v));
+        for ( Path seg : path )
+            node = node.child(this, seg.toString());
+
+        if (node.key != null && node.key != key)
+            keys.remove(node.key, node);
+        node.key = key;
+        keys.put(key, node);
+        return node;
+    }
+
+    /**
+     * 将节点移动到新的路径，子节点随之移动
+     *
+     * @param node 移动的节点
+     * @param to   新的绝对路径
+     *
+     * @return 新路径已有节点时不移动，返回 {@code false}
+     */
+    boolean move(@NotNull Node node, @NotNull Path to) {
+        var parent = roots.computeIfAbsent(to.getRoot().toString(), v -> new Node(null, v));
+        var dir = to.getParent();
+        if (dir != null) {
+            for ( Path seg : dir )
+                parent = parent.child(this, seg.toString());
+        }
+        var name = to.getFileName().toString();
+        if (parent.find(name) != null) {
+            prune(parent);
+            return false;
+        }
+
+        var old = node.parent;
+        old.drop(this, node);
+        node.name = intern(name);
+        node.parent = parent;
+        parent.insert(node);
+        prune(old);
+        return true;
+    }
+
+    /**
+     * 解除监听键的绑定
+     * <p>
+     * 节点没有子节点后会从树中移除
+     *
+     * @return 解除前对应的节点
+     */
+    @Nullable
+    Node remove(@NotNull WatchKey key) {
+        var node = keys.remove(key);
+        if (node == null || node.key != key)
+            return node;
+        node.key = null;
+        prune(node);
+        return node;
+    }
+
+    // 从下往上移除没有监听键和子节点的节点
+    private
+    void prune(Node node) {
+        while( node.parent != null && node.key == null && node.children.length == 0 ){
+            node.parent.drop(this, node);
+            node = node.parent;
+        }
+        if (node.parent == null && node.key == null && node.children.length == 0)
+            roots.remove(node.name, node);
+    }
+
+    /** 清空 */
+    void clear() {
+        roots.clear();
+        keys.clear();
+        segments.clear();
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 根据监听键获取节点 */
+    @Nullable
+    Node node(@NotNull WatchKey key) { return keys.get(key); }
+
+    /** 根据绝对路径获取节点 */
+    @Nullable
+    Node node(@NotNull Path path) {
+        var node = roots.get(path.getRoot().toString());
+        for ( Path seg : path ) {
+            if (node == null)
+                return null;
+            node = node.find(seg.toString());
+        }
+        return node;
+    }
+
+    /** 根据监听键获取路径 */
+    @Nullable
+    String keyToPath(@NotNull WatchKey key) {
+        var node = keys.get(key);
+        return node == null ? null : node.toString();
+    }
+
+    /** 根据路径获取监听键 */
+    @Nullable
+    WatchKey pathToKey(@NotNull Path path) {
+        var node = node(path);
+        return node == null ? null : node.key;
+    }
+
+    /** 监听的目录数量 */
+    int size() { return keys.size(); }
+
+    /**
+     * 遍历节点下所有绑定了监听键的节点，包括该节点
+     *
+     * @param node   开始的节点
+     * @param action 处理绑定了监听键的节点
+     */
+    void forEach(@NotNull Node node, @NotNull Consumer<Node> action) {
+        var stack = new ArrayDeque<Node>();
+        stack.push(node);
+        while( !stack.isEmpty() ){
+            var now = stack.pop();
+            if (now.key != null)
+                action.accept(now);
+            for ( Node child : now.children )
+                stack.push(child);
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    // 获取共用的分段名称
+    private
+    String intern(String name) {
+        var seg = segments.computeIfAbsent(name, Segment::new);
+        seg.refs++;
+        return seg.name;
+    }
+
+    // 释放分段名称
+    private
+    void release(String name) {
+        var seg = segments.get(name);
+        if (seg != null && --seg.refs <= 0)
+            segments.remove(name);
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    /**
+     * <h2>路径节点.</h2>
+     * 只保存当前分段的名称，完整路径由父节点拼接得出
+     *
+     * @author fybug
+     * @version 0.0.1
+     * @since PathTree 0.0.1
+     */
+    static final
+    class Node {
+        /** 父节点，根节点为 {@code null}，移动时修改 */
+        volatile Node parent;
+        /** 分段名称，根节点为根路径，移动时修改 */
+        volatile String name;
+        /** 绑定的监听键，只是路径中间的节点则为 {@code null} */
+        volatile WatchKey key;
+        /** 目录的文件标识，用于识别移动，未知则为 {@code null} */
+        volatile Object fileKey;
+        // 按名称排序的子节点，修改时整体替换
+        private volatile Node[] children = EMPTY;
+
+        private
+        Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        //------------------------------------
+
+        /** 获取子节点，不存在返回 {@code null} */
+        @Nullable
+        Node find(@NotNull String name) {
+            var list = children;
+            int i = search(list, name);
+            return i < 0 ? null : list[i];
+        }
+
+        // 获取子节点，不存在则创建
+        private
+        Node child(PathTree tree, String name) {
+            var list = children;
+            int i = search(list, name);
+            if (i >= 0)
+                return list[i];
+
+            var node = new Node(this, tree.intern(name));
+            insert(node);
+            return node;
+        }
+
+        // 按名称插入子节点
+        private
+        void insert(Node node) {
+            var list = children;
+            int i = -search(list, node.name) - 1;
+            var n = new Node[list.length + 1];
+            System.arraycopy(list, 0, n, 0, i);
+            n[i] = node;
+            System.arraycopy(list, i, n, i + 1, list.length - i);
+            children = n;
+        }
+
+        // 移除子节点
+        private
+        void drop(PathTree tree, Node node) {
+            var list = children;
+            int i = search(list, node.name);
+            if (i < 0 || list[i] != node)
+                return;
+            var n = new Node[list.length - 1];
+            System.arraycopy(list, 0, n, 0, i);
+            System.arraycopy(list, i + 1, n, i, n.length - i);
+            children = n;
+            tree.release(node.name);
+        }
+
+        // 二分查找子节点
+        private static
+        int search(Node[] list, String name) {
+            int low = 0, high = list.length - 1;
+            while( low <= high ){
+                int mid = (low + high) >>> 1;
+                int c = list[mid].name.compareTo(name);
+                if (c < 0)
+                    low = mid + 1;
+                else if (c > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+
+        //------------------------------------
+
+        /** 获取完整路径 */
+        Path toPath() { return Path.of(toString()); }
+
+        /** 拼接完整路径 */
+        @Override
+        public
+        String toString() {
+            if (parent == null)
+                return name;
+            // 从下往上收集分段
+            var segs = new String[8];
+            int size = 0, len = 0;
+            Node root = this;
+            for ( ; root.parent != null; root = root.parent ) {
+                if (size == segs.length)
+                    segs = Arrays.copyOf(segs, size * 2);
+                segs[size++] = root.name;
+                len += root.name.length() + 1;
+            }
+
+            // 根路径自带分隔符
+            var builder = new StringBuilder(root.name.length() + len);
+            builder.append(root.name);
+            for ( int i = size - 1; i >= 0; i-- ) {
+                builder.append(segs[i]);
+                if (i > 0)
+                    builder.append(File.separatorChar);
+            }
+            return builder.toString();
+        }
+    }
+
+    // 共用的分段名称
+    private static final
+    class Segment {
+        final String name;
+        int refs = 0;
+
+        Segment(String name) { this.name = name; }
+    }
+}
@@ -0,0 +1,30 @@
+package fybug.nulll.pdfw.watch;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * <h2>注册进度回调.</h2>
+ * {@link DepthWatch} 注册一个目录树时报告进度<br/>
+ * 注册中每完成一批目录触发一次，全部完成后以 {@code done = true} 再触发一次
+ * <br/><br/>
+ * 会在注册的工作线程中并发调用，需要线程安全
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see DepthWatch.Build#progress(RegisterProgress)
+ * @since watch 0.0.1
+ */
+@FunctionalInterface
+public
+interface RegisterProgress {
+    /**
+     * 报告进度
+     *
+     * @param root  注册的根目录
+     * @param dirs  已注册的目录数量
+     * @param nanos 开始注册后经过的时间，纳秒
+     * @param done  是否已全部完成
+     */
+    void progress(@NotNull Path root, long dirs, long nanos, boolean done);
+}
@@ -4,14 +4,9 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
-import java.util.stream.Stream;
+import java.util.List;
 
 import fybug.nulll.pdfw.Loop;
-import fybug.nulll.pdfw.StateBack;
-import fybug.nulll.pdfw.loopex.LoopState;
-
-import static fybug.nulll.pdfw.loopex.LoopState.WATCH_CLOSE;
-import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
 
 /**
  * <h2>{@link SendWatch} 对接处理程序.</h2>
@@ -27,9 +22,17 @@ import static fybug.nulll.pdfw.loopex.LoopState.WATCH_DOME;
 public
 class SendLoop extends Loop<SendWatch, SendLoop> {
     // 当前注册的 key
-    private final WatchKey KEY;
+    final WatchKey KEY;
     // 当前路径
     private final String path;
+    // 当前路径和父目录的节点，注册时解析，之后不再修改，分发中的事件可继续读取
+    SendWatch.Node self, par;
+    // 是否已释放节点的引用，由锁保护
+    boolean released = false;
+    // 当前路径的名称
+    Path name;
+    // 接收的事件类型掩码
+    int kinds = DirMux.KINDS_ALL;
 
     //----------------------------------------------------------------------------------------------
 
@@ -49,21 +52,23 @@ class SendLoop extends Loop<SendWatch, SendLoop> {
             return false;
 
         // 检查父目录是否被监听
-        return parent.checkParent(getPath(), Path.of(path).getParent(), event.context(), kind);
+        return parent.checkParent(self, par, event.context(), kind);
+    }
+
+    /** 绑定注册时解析的节点和类型 */
+    void bind(SendWatch.Node self, SendWatch.Node par, Path name, int kinds) {
+        this.self = self;
+        this.par = par;
+        this.name = name;
+        this.kinds = kinds;
     }
 
+    /** 处理分发到该处理程序的事件 */
+    void send(List<WatchEvent<?>> events) { runback(KEY, events); }
+
     @Override
     protected
-    LoopState runcall(WatchKey key, WatchEvent<?> event, Stream<StateBack> stream) {
-        var state = new LoopState[]{LoopState.WATCH_NEXT};
-        // 运行处理事件
-        stream.anyMatch(v -> {
-            var st = v.apply(event, getPath());
-            state[0] = st;
-            return st == WATCH_DOME || st == WATCH_CLOSE;
-        });
-        return state[0];
-    }
+    String keyToPath(WatchKey key) { return getPath(); }
 
     //----------------------------------------------------------------------------------------------
 
@@ -76,9 +81,7 @@ class SendLoop extends Loop<SendWatch, SendLoop> {
     @Override
     protected
     void close0() {
-        // close Watch
-        KEY.cancel();
-        // 移除自身
-        parent.removeLoop(KEY);
+        // 移除自身，目录下没有处理程序时取消监听
+        parent.removeLoop(this);
     }
 }
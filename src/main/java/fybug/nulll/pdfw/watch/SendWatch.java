@@ -1,20 +1,28 @@
 package fybug.nulll.pdfw.watch;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
+import javax.management.JMException;
 
+import fybug.nulll.pdfw.OverloadPolicy;
 import fybug.nulll.pdfw.PDFileWatch;
+import fybug.nulll.pdfw.VirtualThreads;
 import fybug.nulll.pdfw.WaServer;
+import fybug.nulll.pdfw.backend.PollBackend;
+import fybug.nulll.pdfw.backend.WatchBackend;
 import fybug.nulll.pdfw.loopex.FileSend;
 import fybug.nulll.pdfw.loopex.LoopState;
 import fybug.nulll.pdfw.loopex.SendDir;
@@ -28,7 +36,8 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
  * <h2>单向路径监控服务.</h2>
  * 监控一组路径，每个路径对应一个 {@link SendLoop} <br/>
  * 只监控声明的路径，子路径不监控<br/>
- * 父目录被监控时，子目录被修改的事件不会往上传
+ * 父目录被监控时，子目录被修改的事件不会往上传<br/>
+ * 同一个目录下的处理程序共用一个监听键，文件的事件只分发给监听该文件的 {@link FileSend}
  * <br/><br/>
  * <pre>使用示例：
  *     public static
@@ -57,16 +66,32 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 public
 class SendWatch extends WaServer<SendLoop> {
 
-    // 当前监听的路径
-    final Set<String> WathcPath = new HashSet<>();
-    // 触发过的路径，父目录 -> 子目录
-    final Map<String, String> watchSeet = new HashMap<>();
+    // 路径 -> 目录节点，只在注册和移除时使用，由锁保护
+    private final Map<String, Node> nodes = new HashMap<>();
+    // 监听键 -> 目录分发器，读取无需加锁
+    private final Map<WatchKey, DirMux> muxs = new ConcurrentHashMap<>();
+    // 目录 -> 目录分发器，由锁保护
+    private final Map<Path, DirMux> dirs = new HashMap<>();
 
     //----------------------------------------------------------------------------------------------
 
     public
     SendWatch(ExecutorService executorService) throws IOException {super(executorService);}
 
+    public
+    SendWatch(ExecutorService executorService, int parallel) throws IOException
+    { super(executorService, parallel); }
+
+    public
+    SendWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory)
+    throws IOException
+    { this(executorService, parallel, threadFactory, null); }
+
+    public
+    SendWatch(ExecutorService executorService, int parallel, ThreadFactory threadFactory,
+              WatchBackend backend) throws IOException
+    { super(executorService, parallel, threadFactory, backend); }
+
     //----------------------------------------------------------------------------------------------
 
     /**
@@ -85,12 +110,8 @@ class SendWatch extends WaServer<SendLoop> {
     @NotNull
     public final
     SendLoop watchDir(@NotNull Path path, WatchEvent.Kind<Path>... kind) throws IOException {
-        return LOCK.trywrite(IOException.class, () -> {
-            checkClose();
-            // 注册后的 key
-            var key = watchPath(path.toAbsolutePath(), kind);
-            return sendKey(key, new SendLoop(key, this, path));
-        });
+        return LOCK.trywrite(IOException.class, () -> attach(path.toAbsolutePath(), kind,
+                                                             key -> new SendLoop(key, this, path)));
     }
 
     /**
@@ -110,12 +131,9 @@ class SendWatch extends WaServer<SendLoop> {
     @NotNull
     public final
     FileSend watchFil(@NotNull Path path, WatchEvent.Kind<Path>... kind) throws IOException {
-        return (FileSend) LOCK.trywrite(IOException.class, () -> {
-            checkClose();
-            // 注册后的 key
-            var key = watchPath(path.toAbsolutePath().getParent(), kind);
-            return sendKey(key, new FileSend(key, this, path));
-        });
+        var dir = path.toAbsolutePath().getParent();
+        return LOCK.trywrite(IOException.class, () -> attach(dir, kind,
+                                                             key -> new FileSend(key, this, path)));
     }
 
     /**
@@ -135,12 +153,8 @@ class SendWatch extends WaServer<SendLoop> {
     @NotNull
     public final
     SendDir checkDir(@NotNull Path path, WatchEvent.Kind<Path>... kind) throws IOException {
-        return (SendDir) LOCK.trywrite(IOException.class, () -> {
-            checkClose();
-            // 注册后的 key
-            var key = watchPath(path.toAbsolutePath(), kind);
-            return sendKey(key, new SendDir(key, this, path));
-        });
+        return LOCK.trywrite(IOException.class, () -> attach(path.toAbsolutePath(), kind,
+                                                             key -> new SendDir(key, this, path)));
     }
 
     /**
@@ -160,48 +174,158 @@ class SendWatch extends WaServer<SendLoop> {
     @NotNull
     public final
     SendFile checkFil(@NotNull Path path, WatchEvent.Kind<Path>... kind) throws IOException {
-        return (SendFile) LOCK.trywrite(IOException.class, () -> {
-            checkClose();
-            // 注册后的 key
-            var key = watchPath(path.toAbsolutePath(), kind);
-            return sendKey(key, new SendFile(key, this, path));
-        });
+        return LOCK.trywrite(IOException.class, () -> attach(path.toAbsolutePath(), kind,
+                                                             key -> new SendFile(key, this, path)));
     }
 
     //------------------------------
 
+    // 获取目录的分发器，监听的类型扩大为已注册类型和新类型的并集
+    private
+    DirMux mux(Path dir, WatchEvent.Kind<Path>[] kind) throws IOException {
+        var mux = dirs.get(dir);
+        // 目录被删除后原有的监听键失效
+        if (mux != null && !mux.key.isValid()) {
+            muxs.remove(mux.key, mux);
+            dirs.remove(dir, mux);
+            mux = null;
+        }
+
+        int mask = DirMux.mask(kind);
+        if (mux == null) {
+            mux = new DirMux(watchPath(dir, kind), dir);
+            dirs.put(dir, mux);
+            muxs.put(mux.key, mux);
+        } else if ((mux.kinds | mask) != mux.kinds) {
+            // 重新注册同一个目录会返回相同的监听键
+            watchPath(dir, DirMux.kinds(mux.kinds | mask));
+        }
+        mux.kinds |= mask;
+        return mux;
+    }
+
+    // 注册目录，创建处理程序并加入分发器
+    private
+    <L extends SendLoop> L attach(Path dir, WatchEvent.Kind<Path>[] kind,
+                                  Function<WatchKey, L> loop) throws IOException
+    {
+        checkClose();
+        // 注册后的 key
+        var mux = mux(dir, kind);
+        return attach(mux, loop.apply(mux.key), kind);
+    }
+
+    // 将处理程序加入分发器，并解析父子关系
+    private
+    <L extends SendLoop> L attach(DirMux mux, L sendLoop, WatchEvent.Kind<Path>[] kind) {
+        var self = retain(sendLoop.getPath());
+        self.watched++;
+        var path = Path.of(sendLoop.toPath());
+        var par = path.getParent();
+        sendLoop.bind(self, par == null ? null : retain(par.toString()), path.getFileName(),
+                      DirMux.mask(kind));
+        mux.add(sendLoop);
+        return sendLoop;
+    }
+
     @Override
     protected
-    WatchKey watchPath(@NotNull Path path, WatchEvent.Kind<Path>[] kind) throws IOException {
-        var k = super.watchPath(path, kind);
-        WathcPath.add(path.toString());
-        return k;
+    void route(WatchKey key, List<WatchEvent<?>> events) {
+        var mux = muxs.get(key);
+        if (mux == null)
+            super.route(key, events);
+        else
+            mux.route(events);
     }
 
-    /** 移除当前处理程序 */
-    void removeLoop(WatchKey key) {
+    /** 同时移除目录的分发器，之后注册该目录时重新监听 */
+    @Override
+    protected
+    void reap(Collection<WatchKey> keys) {
+        for ( WatchKey key : keys ) {
+            var mux = muxs.remove(key);
+            if (mux != null)
+                dirs.remove(mux.dir, mux);
+        }
+        super.reap(keys);
+    }
+
+    @Override
+    protected
+    int loops() {
+        int size = super.loops();
+        for ( DirMux mux : muxs.values() )
+            size += mux.size();
+        return size;
+    }
+
+    /** 移除当前处理程序，目录下没有处理程序时取消监听 */
+    void removeLoop(SendLoop loop) {
         LOCK.write(() -> {
-            var l = keymap.remove(key);
-            WathcPath.remove(l.getPath());
-            watchSeet.remove(l.getPath());
+            var mux = muxs.get(loop.KEY);
+            if (mux == null) {
+                // 直接使用 sendKey 注册的处理程序
+                if (keymap.remove(loop.KEY, loop))
+                    loop.KEY.cancel();
+            } else if (mux.remove(loop)) {
+                muxs.remove(mux.key, mux);
+                dirs.remove(mux.dir, mux);
+                mux.key.cancel();
+            }
+
+            // 只释放引用，节点保留给分发中的事件
+            var self = loop.self;
+            if (self == null || loop.released)
+                return;
+            loop.released = true;
+            self.watched--;
+            release(self);
+            if (loop.par != null)
+                release(loop.par);
         });
     }
 
+    // 获取目录节点并增加引用
+    private
+    Node retain(String path) {
+        var node = nodes.computeIfAbsent(path, Node::new);
+        node.refs++;
+        return node;
+    }
+
+    // 减少引用，没有引用时移除节点
+    private
+    void release(Node node) {
+        if (--node.refs <= 0)
+            nodes.remove(node.path, node);
+    }
+
     //----------------------------------------------------------------------------------------------
 
-    /** 检查父目录是否被监听 */
-    boolean checkParent(String path, Path parpath, Object context, WatchEvent.Kind<?> kind) {
-        return LOCK.write(() -> {
-            if (WathcPath.contains(parpath.toString()) && context instanceof Path)
-                // 记录当前目录，父目录 -> 当前目录名
-                watchSeet.put(parpath.toString(), new File(path).getName());
-
-            /* 检查目录是否被触发过 */
-            if (kind == ENTRY_MODIFY && watchSeet.containsKey(path))
-                // 检查子目录
-                return !watchSeet.remove(path).equals(context.toString());
-            return true;
-        });
+    /**
+     * 检查父目录是否被监听
+     * <p>
+     * 只读写注册时解析好的节点，无需加锁
+     *
+     * @param self    当前路径的节点
+     * @param par     父目录的节点，没有父目录为 {@code null}
+     * @param context 事件的相对路径
+     * @param kind    事件类型
+     *
+     * @return 是否需要处理该事件
+     */
+    boolean checkParent(Node self, Node par, Object context, WatchEvent.Kind<?> kind) {
+        // 记录当前目录，父目录 -> 当前目录名
+        if (par != null && par.watched > 0 && context instanceof Path && par.seen != self.name)
+            par.seen = self.name;
+
+        /* 检查目录是否被触发过 */
+        if (kind == ENTRY_MODIFY && self.seen != null) {
+            var seen = Node.SEEN.getAndSet(self, null);
+            // 检查子目录
+            return seen == null || !seen.equals(context);
+        }
+        return true;
     }
 
     //----------------------------------------------------------------------------------------------
@@ -209,9 +333,46 @@ class SendWatch extends WaServer<SendLoop> {
     @Override
     protected
     void close0() {
+        LOCK.write(() -> {
+            for ( DirMux mux : muxs.values().toArray(new DirMux[0]) )
+                mux.loops().forEach(SendLoop::close);
+            muxs.clear();
+            dirs.clear();
+        });
         super.close0();
-        WathcPath.clear();
-        watchSeet.clear();
+        LOCK.write(nodes::clear);
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    /**
+     * <h2>目录节点.</h2>
+     * 记录目录是否被监听和最近触发过的子目录，在注册时由 {@link SendLoop} 持有
+     *
+     * @author fybug
+     * @version 0.0.1
+     * @since SendWatch 0.0.1
+     */
+    static final
+    class Node {
+        static final AtomicReferenceFieldUpdater<Node, Path> SEEN =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Path.class, "seen");
+
+        /** 目录路径 */
+        final String path;
+        /** 目录名称，根目录为 {@code null} */
+        final Path name;
+        /** 被监听的次数 */
+        volatile int watched = 0;
+        /** 最近触发过的子目录名称 */
+        volatile Path seen = null;
+        // 引用数量，由锁保护
+        int refs = 0;
+
+        Node(String path) {
+            this.path = path;
+            name = Path.of(path).getFileName();
+        }
     }
 
     /*--------------------------------------------------------------------------------------------*/
@@ -223,7 +384,12 @@ class SendWatch extends WaServer<SendLoop> {
 
     /**
      * <h2>监听服务构造工具.</h2>
-     * 使用 {@link #pool(ExecutorService)} 修改监听用的线程池
+     * 使用 {@link #pool(ExecutorService)} 修改监听用的线程池<br/>
+     * 使用 {@link #parallel(int)} 按监听键分片并行处理事件<br/>
+     * 使用 {@link #virtual(boolean)} 使用虚拟线程进行监听和分发<br/>
+     * 使用 {@link #backend(WatchBackend)} 替换监听后端<br/>
+     * 使用 {@link #jmx(boolean)} 通过 JMX 发布统计<br/>
+     * 使用 {@link #queue(int)} 和 {@link #overload(OverloadPolicy)} 限制分发队列
      *
      * @author fybug
      * @version 0.0.1
@@ -234,10 +400,62 @@ class SendWatch extends WaServer<SendLoop> {
     class Build {
         /** 监听执行的线程池 */
         @Setter private ExecutorService pool = null;
+        /**
+         * 分发事件的工作线程数量
+         * <p>
+         * 大于 0 时每个监听键的事件会分片到对应的工作线程中处理，同一个监听键的事件保持顺序，
+         * 不同监听键的事件并行处理，此时回调需要线程安全
+         */
+        @Setter private int parallel = 0;
+        /**
+         * 是否使用虚拟线程
+         * <p>
+         * 未指定线程池时监听线程和分发的工作线程均使用虚拟线程创建，jdk 不支持时使用普通线程
+         *
+         * @see VirtualThreads
+         */
+        @Setter private boolean virtual = false;
+        /**
+         * 监听后端
+         * <p>
+         * 为 null 则使用系统监听，在 NFS、FUSE 等系统不推送事件的挂载点可使用 {@link PollBackend}
+         *
+         * @see WatchBackend
+         */
+        @Setter private WatchBackend backend = null;
+        /**
+         * 是否通过 JMX 发布统计
+         *
+         * @see WaServer#exportMBean()
+         */
+        @Setter private boolean jmx = false;
+        /**
+         * 每个工作线程队列中的事件数量上限
+         * <p>
+         * 只在开启工作线程时有效，小于 1 则不限制
+         *
+         * @see WaServer#queue(int, OverloadPolicy)
+         */
+        @Setter private int queue = 0;
+        /** 队列满时的处理方式 */
+        @Setter private OverloadPolicy overload = OverloadPolicy.BLOCK;
 
         /** 构造监听服务 */
         @NotNull
         public
-        SendWatch build() throws IOException {return new SendWatch(pool);}
+        SendWatch build() throws IOException {
+            var watch = new SendWatch(pool, parallel, virtual ? VirtualThreads.factory() : null,
+                                      backend);
+            watch.queue(queue, overload);
+            if (jmx) {
+                try {
+                    watch.exportMBean();
+                } catch ( JMException e ) {
+                    watch.close();
+                    throw new IOException(e);
+                }
+            }
+            return watch;
+        }
     }
 }
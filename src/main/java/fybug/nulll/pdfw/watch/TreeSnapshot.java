@@ -0,0 +1,263 @@
+package fybug.nulll.pdfw.watch;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <h2>目录树快照.</h2>
+ * 记录一组目录下所有直接子项的路径、文件标识、大小和修改时间，按路径排序<br/>
+ * 用于服务重启时和磁盘对比，得出服务停止期间的变化
+ * <br/><br/>
+ * 保存为二进制文件，路径只记录和上一个路径不同的部分，数字使用变长编码<br/>
+ * 写入时先写入临时文件再替换，保存中断不会损坏旧的快照
+ *
+ * @author fybug
+ * @version 0.0.1
+ * @see DepthWatch
+ * @since watch 0.0.1
+ */
+final
+class TreeSnapshot {
+    /** 文件标记 */
+    static final int MAGIC = 0x50444657;
+    /** 格式版本 */
+    static final int VERSION = 1;
+
+    // 按路径排序的记录
+    private final Entry[] entries;
+
+    //----------------------------------------------------------------------------------------------
+
+    private
+    TreeSnapshot(Entry[] entries) { this.entries = entries; }
+
+    /** 记录数量 */
+    int size() { return entries.length; }
+
+    /**
+     * 并行扫描一组目录
+     *
+     * @param pool 扫描使用的线程池
+     * @param dirs 要扫描的目录，只记录直接子项
+     */
+    static
+    TreeSnapshot scan(ForkJoinPool pool, Collection<Path> dirs) throws IOException {
+        try {
+            var list = pool.submit(() -> dirs.parallelStream()
+                                             .flatMap(dir -> list(dir).stream())
+                                             .collect(Collectors.toList())).get();
+            var array = list.toArray(new Entry[0]);
+            Arrays.parallelSort(array, (a, b) -> a.path.compareTo(b.path));
+            return new TreeSnapshot(array);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch ( ExecutionException e ) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // 列出目录下的子项，目录已不存在返回空
+    private static
+    List<Entry> list(Path dir) {
+        var list = new ArrayList<Entry>();
+        try ( var stream = Files.newDirectoryStream(dir) ) {
+            for ( Path path : stream ) {
+                try {
+                    var attr = Files.readAttributes(path, BasicFileAttributes.class);
+                    list.add(new Entry(path.toString(), attr.isDirectory(), attr.size(),
+                                       attr.lastModifiedTime().toMillis(),
+                                       Objects.hashCode(attr.fileKey())));
+                } catch ( IOException e ) {
+                    // 已被删除
+                }
+            }
+        } catch ( IOException | DirectoryIteratorException e ) {
+            // 已被删除
+        }
+        return list;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /**
+     * 和当前状态对比根目录下的变化
+     *
+     * @param now    当前状态
+     * @param root   根目录
+     * @param action 接收变化的路径和类型
+     */
+    void diff(TreeSnapshot now, String root, BiConsumer<String, WatchEvent.Kind<Path>> action) {
+        var prefix = root.endsWith(File.separator) ? root : root + File.separator;
+        var old = entries;
+        var cur = now.entries;
+        int i = lower(old, prefix), j = lower(cur, prefix);
+        while( true ){
+            var o = i < old.length && old[i].path.startsWith(prefix) ? old[i] : null;
+            var c = j < cur.length && cur[j].path.startsWith(prefix) ? cur[j] : null;
+            if (o == null && c == null)
+                break;
+            int cmp = o == null ? 1 : c == null ? -1 : o.path.compareTo(c.path);
+            if (cmp < 0) {
+                action.accept(o.path, ENTRY_DELETE);
+                i++;
+            } else if (cmp > 0) {
+                action.accept(c.path, ENTRY_CREATE);
+                j++;
+            } else {
+                if (o.dir != c.dir || o.key != c.key) {
+                    // 被替换为其他文件
+                    action.accept(o.path, ENTRY_DELETE);
+                    action.accept(c.path, ENTRY_CREATE);
+                } else if (!o.dir && (o.size != c.size || o.time != c.time)) {
+                    action.accept(c.path, ENTRY_MODIFY);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /** 是否有根目录下的记录 */
+    boolean contains(String root) {
+        var prefix = root.endsWith(File.separator) ? root : root + File.separator;
+        int i = lower(entries, prefix);
+        return i < entries.length && entries[i].path.startsWith(prefix);
+    }
+
+    // 第一个不小于该路径的位置
+    private static
+    int lower(Entry[] list, String path) {
+        int low = 0, high = list.length;
+        while( low < high ){
+            int mid = (low + high) >>> 1;
+            if (list[mid].path.compareTo(path) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** 写入文件，先写入临时文件再替换 */
+    void write(Path file) throws IOException {
+        file = file.toAbsolutePath();
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try ( var out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) ) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVar(out, entries.length);
+            var last = "";
+            for ( Entry e : entries ) {
+                // 和上一个路径相同的部分
+                int same = 0, max = Math.min(last.length(), e.path.length());
+                while( same < max && last.charAt(same) == e.path.charAt(same) )
+                    same++;
+                writeVar(out, same);
+                out.writeUTF(e.path.substring(same));
+                out.writeByte(e.dir ? 1 : 0);
+                writeVar(out, e.size);
+                writeVar(out, e.time);
+                out.writeInt(e.key);
+                last = e.path;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** 读取文件 */
+    static
+    TreeSnapshot read(Path file) throws IOException {
+        try ( var in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16)) ) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new StreamCorruptedException("Not a snapshot: " + file);
+            var entries = new Entry[(int) readVar(in)];
+            var last = "";
+            for ( int i = 0; i < entries.length; i++ ) {
+                var same = (int) readVar(in);
+                if (same > last.length())
+                    throw new StreamCorruptedException("Bad prefix in snapshot: " + file);
+                var path = last.substring(0, same) + in.readUTF();
+                entries[i] = new Entry(path, in.readByte() != 0, readVar(in), readVar(in),
+                                       in.readInt());
+                last = path;
+            }
+            return new TreeSnapshot(entries);
+        }
+    }
+
+    // 写入变长数字
+    private static
+    void writeVar(DataOutput out, long v) throws IOException {
+        // 负数也能编码
+        v = (v << 1) ^ (v >> 63);
+        while( (v & ~0x7FL) != 0 ){
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    // 读取变长数字
+    private static
+    long readVar(DataInput in) throws IOException {
+        long v = 0;
+        for ( int shift = 0; shift < 64; shift += 7 ) {
+            var b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (v >>> 1) ^ -(v & 1);
+        }
+        throw new StreamCorruptedException("Bad number in snapshot");
+    }
+
+    /*--------------------------------------------------------------------------------------------*/
+
+    // 子项记录
+    private static final
+    class Entry {
+        final String path;
+        final boolean dir;
+        final long size;
+        final long time;
+        // 文件标识的摘要
+        final int key;
+
+        Entry(String path, boolean dir, long size, long time, int key) {
+            this.path = path;
+            this.dir = dir;
+            this.size = size;
+            this.time = time;
+            this.key = key;
+        }
+    }
+}
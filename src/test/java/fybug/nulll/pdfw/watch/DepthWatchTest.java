@@ -7,8 +7,15 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import fybug.nulll.pdfw.MoveEvent;
+import fybug.nulll.pdfw.OverloadPolicy;
 import fybug.nulll.pdfw.PDFileWatch;
+import fybug.nulll.pdfw.PathKind;
 import fybug.nulll.pdfw.RunTest;
 
 import static fybug.nulll.pdfw.funciton.NextState.nextstate;
@@ -148,6 +155,8 @@ class DepthWatchTest {
         RunTest.writeMark("C:tmp.a,F:tmpF\n");
 
         Files.createFile(RunTest.subF);
+        // 新建的目录不符合规则也会自动监听
+        RunTest.writeMark("C:tmp.w,F:tmpF\n");
 
         Files.writeString(RunTest.tmpF, "a", WRITE);
         RunTest.writeMark("M:tmp.a,F:tmpF\n");
@@ -158,7 +167,213 @@ class DepthWatchTest {
         RunTest.writeMark("D:tmp.a,F:tmpF\n");
 
         Files.deleteIfExists(RunTest.subF);
+        RunTest.writeMark("D:tmp.w,F:tmpF\n");
         Files.deleteIfExists(RunTest.subD);
         RunTest.writeMark("D:sub,F:tmpF\n");
     }
-}
\ No newline at end of file
+
+    @Test
+    public
+    void progress() throws IOException {
+        // 并行注册并报告进度
+        try ( var w = PDFileWatch.depthWatch()
+                                 .parallelism(2)
+                                 .progress((root, dirs, nanos, done) -> {
+                                     if (done)
+                                         RunTest.out.write("P:" + dirs + "\n");
+                                 })
+                                 .build() ) {
+            Files.createDirectories(RunTest.subD);
+            w.watchDir(RunTest.tmpD);
+            // 正确输出：tmpD 和 subD 两个目录
+            RunTest.writeMark("P:2\n");
+        }
+        Files.deleteIfExists(RunTest.subD);
+    }
+
+    @Test
+    public
+    void restore() throws IOException {
+        var snap = RunTest.ROOT.toPath().resolve("tmp.snap");
+        Files.createDirectories(RunTest.subD);
+        Files.writeString(RunTest.subF, "a");
+        Files.createFile(RunTest.tmpF);
+        // 关闭时保存快照
+        try ( var w = PDFileWatch.depthWatch().snapshot(snap).build() ) {
+            w.watchDir(RunTest.tmpD);
+        }
+
+        // 停止期间的变化
+        Files.writeString(RunTest.subF, "abc");
+        Files.deleteIfExists(RunTest.tmpF);
+        Files.createFile(RunTest.subF2);
+
+        try ( var w = PDFileWatch.depthWatch().snapshot(snap).build() ) {
+            var loop = w.watchDir(RunTest.tmpD)
+                        .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                                "C:" + even.context().toString() + "\n")))
+                        .addCall(ENTRY_MODIFY, nextstate((even, path) -> RunTest.out.write(
+                                "M:" + even.context().toString() + "\n")))
+                        .addCall(ENTRY_DELETE, nextstate((even, path) -> RunTest.out.write(
+                                "D:" + even.context().toString() + "\n")));
+            Assert.assertEquals(3, loop.restore());
+            RunTest.writeMark("C:tmp.as\nM:tmp.w\nD:tmp.a\n");
+        } finally {
+            Files.deleteIfExists(RunTest.subF);
+            Files.deleteIfExists(RunTest.subF2);
+            Files.deleteIfExists(RunTest.subD);
+            Files.deleteIfExists(snap);
+        }
+    }
+
+    @Test
+    public
+    void autoRestore() throws Exception {
+        var snap = RunTest.ROOT.toPath().resolve("tmp.snap");
+        Files.createDirectories(RunTest.subD);
+        Files.writeString(RunTest.subF, "a");
+        try ( var w = PDFileWatch.depthWatch().snapshot(snap).build() ) {
+            w.watchDir(RunTest.tmpD);
+        }
+
+        // 停止期间的变化
+        Files.createFile(RunTest.subF2);
+
+        try ( var w = PDFileWatch.depthWatch().snapshot(snap).autoRestore(300).build() ) {
+            var loop = w.watchDir(RunTest.tmpD)
+                        .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                                "C:" + even.context().toString() + "\n")));
+            // 等待自动补发
+            Thread.sleep(600);
+            RunTest.writeMark("C:tmp.as\n");
+            // 已自动补发
+            Assert.assertEquals(0, loop.restore());
+        } finally {
+            Files.deleteIfExists(RunTest.subF);
+            Files.deleteIfExists(RunTest.subF2);
+            Files.deleteIfExists(RunTest.subD);
+            Files.deleteIfExists(snap);
+        }
+    }
+
+    @Test
+    public
+    void move() throws IOException {
+        // 开启移动识别
+        watch.close();
+        watch = PDFileWatch.depthWatch().moveWait(500).build();
+        var moved = RunTest.tmpD.resolve("moved");
+        var deep = moved.resolve("deep");
+        Files.createDirectories(RunTest.subD.resolve("deep"));
+
+        watch.watchDir(RunTest.tmpD)
+             .addCall(PathKind.ENTRY_MOVE, nextstate((even, path) -> RunTest.out.write(
+                     "V:" + ((MoveEvent) even).from() + "->" + even.context() + "\n")))
+             .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                     "C:" + RunTest.tmpD.relativize(Path.of(path).resolve((Path) even.context())) +
+                     "\n")));
+
+        try {
+            // 重命名只触发一次移动
+            Files.move(RunTest.subD, moved);
+            RunTest.writeMark("V:sub->moved\n");
+            // 子目录的监听随之移动
+            Files.createFile(deep.resolve("tmp.a"));
+            RunTest.writeMark("C:moved/deep/tmp.a\n");
+        } finally {
+            Files.deleteIfExists(deep.resolve("tmp.a"));
+            Files.deleteIfExists(deep);
+            Files.deleteIfExists(moved);
+            Files.deleteIfExists(RunTest.subD.resolve("deep"));
+            Files.deleteIfExists(RunTest.subD);
+        }
+    }
+
+    @Test
+    public
+    void release() throws IOException {
+        var out = RunTest.ROOT.toPath().resolve("tmp.out");
+        var deep = RunTest.subD.resolve("deep");
+        Files.createDirectories(deep);
+        watch.watchDir(RunTest.tmpD);
+        Assert.assertEquals(3, watch.tree.size());
+
+        try {
+            // 移出监听范围，子目录的监听键依旧有效，需一起解除
+            Files.move(RunTest.subD, out);
+            RunTest.writeMark("");
+            Assert.assertEquals(1, watch.tree.size());
+        } finally {
+            Files.deleteIfExists(out.resolve("deep"));
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(deep);
+            Files.deleteIfExists(RunTest.subD);
+        }
+    }
+
+    @Test
+    public
+    void include() throws IOException {
+        var file = RunTest.subD.resolve("tmp.a");
+        watch.watchDir(RunTest.tmpD)
+             .include("*.a")
+             .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                     "C:" + RunTest.tmpD.relativize(Path.of(path).resolve((Path) even.context())) +
+                     "\n")));
+
+        try {
+            // 目录不符合规则，但仍需自动监听
+            Files.createDirectories(RunTest.subD);
+            RunTest.writeMark("");
+            Files.createFile(file);
+            RunTest.writeMark("C:sub/tmp.a\n");
+            Assert.assertEquals(2, watch.tree.size());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(RunTest.subD);
+        }
+    }
+
+    @Test
+    public
+    void conflate() throws Exception {
+        // 队列只能容纳一个事件，满时合并
+        watch.close();
+        watch = PDFileWatch.depthWatch().parallel(1).queue(1).overload(OverloadPolicy.CONFLATE)
+                           .build();
+        var latch = new CountDownLatch(1);
+
+        watch.watchDir(RunTest.tmpD)
+             .addCall(ENTRY_CREATE, nextstate((even, path) -> {
+                 var name = RunTest.tmpD.relativize(Path.of(path).resolve((Path) even.context()));
+                 RunTest.out.write("C:" + name + "\n");
+                 // 阻塞工作线程，让之后的事件积压
+                 if (name.toString().equals("tmp.a")) {
+                     try {
+                         latch.await(5, TimeUnit.SECONDS);
+                     } catch ( InterruptedException ignored ) {
+                     }
+                 }
+             }));
+
+        try {
+            Files.createFile(RunTest.tmpF);
+            RunTest.writeMark("C:tmp.a\n");
+            // 新建后的修改合并后依旧是新建，新目录需被监听
+            Files.createDirectories(RunTest.subD);
+            Thread.sleep(100);
+            Files.setLastModifiedTime(RunTest.subD, FileTime.fromMillis(0));
+            Thread.sleep(100);
+            Assert.assertTrue(watch.stats().conflated > 0);
+            latch.countDown();
+            RunTest.writeMark("C:sub\n");
+            Files.createFile(RunTest.subF);
+            RunTest.writeMark("C:sub/tmp.w\n");
+        } finally {
+            latch.countDown();
+            Files.deleteIfExists(RunTest.subF);
+            Files.deleteIfExists(RunTest.subD);
+            Files.deleteIfExists(RunTest.tmpF);
+        }
+    }
+}
@@ -6,13 +6,33 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import fybug.nulll.pdfw.OverloadPolicy;
 import fybug.nulll.pdfw.PDFileWatch;
+import fybug.nulll.pdfw.PathEvent;
+import fybug.nulll.pdfw.PathKind;
 import fybug.nulll.pdfw.RunTest;
 import fybug.nulll.pdfw.WaServer;
+import fybug.nulll.pdfw.backend.PollBackend;
+import fybug.nulll.pdfw.loopex.LoopState;
 
+import static fybug.nulll.pdfw.funciton.AsnyState.asnyvirtual;
 import static fybug.nulll.pdfw.funciton.NextState.nextstate;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
@@ -141,6 +161,31 @@ class SendWatchTest {
         Files.deleteIfExists(RunTest.subD);
     }
 
+    @Test
+    public
+    void multiFil() throws IOException {
+        // 同一个目录下的两个文件，监听不同的类型
+        sendWatch.watchFil(RunTest.tmpF, ENTRY_CREATE, ENTRY_DELETE)
+                 .addDefaCall(nextstate((even, path) -> RunTest.out.write(
+                         even.kind().name() + ":" + even.context().toString() + ",F:tmpF\n")));
+        var tmpF2 = RunTest.tmpD.resolve("tmp.b");
+        sendWatch.watchFil(tmpF2, ENTRY_MODIFY)
+                 .addDefaCall(nextstate((even, path) -> RunTest.out.write(
+                         even.kind().name() + ":" + even.context().toString() + ",F:tmpF2\n")));
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("ENTRY_CREATE:tmp.a,F:tmpF\n");
+        Files.createFile(tmpF2);
+
+        Files.writeString(RunTest.tmpF, "a", WRITE);
+        Files.writeString(tmpF2, "a", WRITE);
+        RunTest.writeMark("ENTRY_MODIFY:tmp.b,F:tmpF2\n");
+
+        Files.deleteIfExists(tmpF2);
+        Files.deleteIfExists(RunTest.tmpF);
+        RunTest.writeMark("ENTRY_DELETE:tmp.a,F:tmpF\n");
+    }
+
     @Test
     public
     void checkDir() throws IOException {
@@ -212,4 +257,440 @@ class SendWatchTest {
         Files.deleteIfExists(RunTest.subD);
         RunTest.writeMark("D:sub,F:tmpF\n");
     }
-}
\ No newline at end of file
+
+    @Test
+    public
+    void parallel() throws Exception {
+        // 使用分片处理的监控服务，每个目录一个监听键
+        sendWatch.close();
+        sendWatch = PDFileWatch.sendWatch().parallel(8).build();
+        var dirs = new ArrayList<Path>();
+        var orders = new ArrayList<List<String>>();
+        // 至少两个监听键同时在回调中才能放行
+        var together = new CountDownLatch(2);
+        var concurrent = new AtomicBoolean(false);
+
+        for ( int i = 0; i < 8; i++ ) {
+            var dir = RunTest.tmpD.resolve("p" + i);
+            var order = Collections.synchronizedList(new ArrayList<String>());
+            Files.createDirectories(dir);
+            dirs.add(dir);
+            orders.add(order);
+            sendWatch.watchDir(dir, ENTRY_CREATE).addCall(ENTRY_CREATE, nextstate((even, path) -> {
+                order.add(even.context().toString());
+                together.countDown();
+                try {
+                    if (together.await(5, TimeUnit.SECONDS))
+                        concurrent.set(true);
+                } catch ( InterruptedException ignored ) {
+                }
+            }));
+        }
+
+        try {
+            for ( int f = 0; f < 5; f++ ) {
+                for ( Path dir : dirs )
+                    Files.createFile(dir.resolve("f" + f));
+            }
+            var end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while( orders.stream().anyMatch(o -> o.size() < 5) && System.nanoTime() < end )
+                Thread.sleep(50);
+
+            // 不同监听键并行处理
+            Assert.assertTrue(concurrent.get());
+            // 同一监听键按顺序处理
+            for ( List<String> order : orders )
+                Assert.assertEquals(List.of("f0", "f1", "f2", "f3", "f4"), order);
+        } finally {
+            for ( Path dir : dirs ) {
+                for ( int f = 0; f < 5; f++ )
+                    Files.deleteIfExists(dir.resolve("f" + f));
+                Files.deleteIfExists(dir);
+            }
+        }
+    }
+
+    @Test
+    public
+    void closeInDispatch() throws Exception {
+        var files = new Path[]{RunTest.tmpF, RunTest.tmpD.resolve("tmp.b"), RunTest.tmpD.resolve("tmp.c")};
+        for ( Path file : files )
+            Files.createFile(file);
+        Files.createDirectories(RunTest.subD);
+        var loop = new AtomicReference<SendLoop>();
+
+        sendWatch.watchDir(RunTest.subD, ENTRY_CREATE)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                         "C:" + even.context().toString() + ",F:subD\n")));
+        loop.set(sendWatch.watchDir(RunTest.tmpD, ENTRY_MODIFY)
+                          .addCall(ENTRY_MODIFY, nextstate((even, path) -> {
+                              var name = even.context().toString();
+                              RunTest.out.write("M:" + name + ",F:tmpD\n");
+                              if (name.equals("tmp.a")) {
+                                  // 阻塞监听线程，让之后的修改在同一批事件中
+                                  try {
+                                      Thread.sleep(300);
+                                  } catch ( InterruptedException ignored ) {
+                                  }
+                              } else {
+                                  // 分发中关闭，同一批的其余事件不能中断监听线程
+                                  loop.get().close();
+                              }
+                          })));
+
+        try {
+            Files.writeString(files[0], "a", WRITE);
+            Thread.sleep(100);
+            Files.writeString(files[1], "b", WRITE);
+            Files.writeString(files[2], "c", WRITE);
+            RunTest.writeMark("M:tmp.a,F:tmpD\n");
+            Thread.sleep(300);
+            RunTest.writeMark("M:tmp.b,F:tmpD\n");
+            Assert.assertTrue(loop.get().isClose());
+
+            // 监听线程依旧工作
+            Files.createFile(RunTest.subF);
+            RunTest.writeMark("C:tmp.w,F:subD\n");
+        } finally {
+            for ( Path file : files )
+                Files.deleteIfExists(file);
+            Files.deleteIfExists(RunTest.subF);
+            Files.deleteIfExists(RunTest.subD);
+        }
+    }
+
+    @Test
+    public
+    void virtual() throws Exception {
+        // 使用虚拟线程的监控服务，jdk 不支持时使用普通线程
+        sendWatch.close();
+        sendWatch = PDFileWatch.sendWatch().virtual(true).parallel(1).build();
+        var thread = new AtomicReference<Thread>();
+
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_DELETE)
+                 .addCall(ENTRY_CREATE, asnyvirtual((even, path) -> {
+                     thread.set(Thread.currentThread());
+                     RunTest.out.write("C:" + even.context().toString() + ",F:tmpD\n");
+                 }));
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+        // 回调运行在另一个线程中
+        Assert.assertNotNull(thread.get());
+        Assert.assertNotSame(Thread.currentThread(), thread.get());
+        Files.deleteIfExists(RunTest.tmpF);
+    }
+
+    @Test
+    public
+    void overload() throws Exception {
+        // 队列只能容纳一个事件，满时合并
+        sendWatch.close();
+        sendWatch = PDFileWatch.sendWatch().parallel(1).queue(1).overload(OverloadPolicy.CONFLATE)
+                               .build();
+        var latch = new CountDownLatch(1);
+
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> {
+                     RunTest.out.write("C:" + even.context().toString() + ",F:tmpD\n");
+                     // 阻塞工作线程，让之后的事件积压
+                     try {
+                         latch.await(5, TimeUnit.SECONDS);
+                     } catch ( InterruptedException ignored ) {
+                     }
+                 }))
+                 .addCall(ENTRY_MODIFY, nextstate((even, path) -> RunTest.out.write(
+                         "M:" + even.context().toString() + ",F:tmpD\n")));
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+        Files.writeString(RunTest.tmpF, "a", WRITE);
+        Thread.sleep(100);
+        Files.writeString(RunTest.tmpF, "b", WRITE);
+        Thread.sleep(100);
+        // 两次修改合并为一次
+        Assert.assertTrue(sendWatch.stats().conflated > 0);
+        latch.countDown();
+        RunTest.writeMark("M:tmp.a,F:tmpD\n");
+        Assert.assertEquals(0, sendWatch.stats().dropped);
+
+        Files.deleteIfExists(RunTest.tmpF);
+    }
+
+    @Test
+    public
+    void degrade() throws Exception {
+        // 队列只能容纳一个事件，满时只通知目录有变化
+        sendWatch.close();
+        sendWatch = PDFileWatch.sendWatch().parallel(1).queue(1).overload(OverloadPolicy.DEGRADE)
+                               .build();
+        var latch = new CountDownLatch(1);
+
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> {
+                     RunTest.out.write("C:" + even.context().toString() + ",F:tmpD\n");
+                     // 阻塞工作线程，让之后的事件积压
+                     try {
+                         latch.await(5, TimeUnit.SECONDS);
+                     } catch ( InterruptedException ignored ) {
+                     }
+                 }))
+                 .addCall(PathKind.ENTRY_OVERFLOW, nextstate((even, path) -> RunTest.out.write(
+                         "O:" + even.context().toString() + ",F:tmpD\n")));
+
+        try {
+            Files.createFile(RunTest.tmpF);
+            RunTest.writeMark("C:tmp.a,F:tmpD\n");
+            Files.writeString(RunTest.tmpF, "a", WRITE);
+            Files.createDirectories(RunTest.subD);
+            Thread.sleep(100);
+            Assert.assertTrue(sendWatch.stats().degraded > 0);
+            latch.countDown();
+            // 积压的事件替换为一次溢出
+            RunTest.writeMark("O:,F:tmpD\n");
+        } finally {
+            latch.countDown();
+            Files.deleteIfExists(RunTest.subD);
+            Files.deleteIfExists(RunTest.tmpF);
+        }
+    }
+
+    @Test
+    public
+    void debounce() throws Exception {
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+                 // 合并 300 毫秒内的事件
+                 .debounce(300)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                         "C:" + even.context().toString() + ",F:tmpD\n")))
+                 .addCall(ENTRY_MODIFY, nextstate((even, path) -> RunTest.out.write(
+                         "M:" + even.context().toString() + ",F:tmpD\n")))
+                 .addCall(ENTRY_DELETE, nextstate((even, path) -> RunTest.out.write(
+                         "D:" + even.context().toString() + ",F:tmpD\n")));
+
+        // 新建后多次修改只触发一次新建
+        Files.createFile(RunTest.tmpF);
+        Files.writeString(RunTest.tmpF, "a", WRITE);
+        Files.writeString(RunTest.tmpF, "b", WRITE);
+        Thread.sleep(500);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+
+        Files.deleteIfExists(RunTest.tmpF);
+        Thread.sleep(500);
+        RunTest.writeMark("D:tmp.a,F:tmpD\n");
+    }
+
+    @Test
+    public
+    void batch() throws IOException {
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+                 // 批量接收新建事件
+                 .addBatchCall(ENTRY_CREATE, (events, path) -> {
+                     events.forEach(even -> RunTest.out.write(
+                             "C:" + even.context().toString() + ",F:tmpD\n"));
+                     return LoopState.WATCH_NEXT;
+                 })
+                 // 批量接收其余事件
+                 .addDefaBatchCall((events, path) -> {
+                     events.forEach(even -> RunTest.out.write(
+                             "A:" + even.context().toString() + ",F:tmpD\n"));
+                     return LoopState.WATCH_NEXT;
+                 });
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+
+        Files.deleteIfExists(RunTest.tmpF);
+        RunTest.writeMark("A:tmp.a,F:tmpD\n");
+    }
+
+    @Test
+    public
+    void exclude() throws IOException {
+        // 忽略临时文件
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_DELETE)
+                 .exclude("*.tmp", "regex:.*~")
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                         "C:" + even.context().toString() + ",F:tmpD\n")))
+                 .addCall(ENTRY_DELETE, nextstate((even, path) -> RunTest.out.write(
+                         "D:" + even.context().toString() + ",F:tmpD\n")));
+
+        var tmp = RunTest.tmpD.resolve("a.tmp");
+        var bak = RunTest.tmpD.resolve("a~");
+        Files.createFile(tmp);
+        Files.createFile(bak);
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+
+        Files.deleteIfExists(tmp);
+        Files.deleteIfExists(bak);
+        Files.deleteIfExists(RunTest.tmpF);
+        RunTest.writeMark("D:tmp.a,F:tmpD\n");
+    }
+
+    @Test
+    public
+    void checkContent() throws IOException {
+        // 只处理内容变化的修改
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_MODIFY)
+                 .checkContent(16)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                         "C:" + even.context().toString() + ",F:tmpD\n")))
+                 .addCall(ENTRY_MODIFY, nextstate((even, path) -> RunTest.out.write(
+                         "M:" + even.context().toString() + ",F:tmpD\n")));
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("C:tmp.a,F:tmpD\n");
+        Files.writeString(RunTest.tmpF, "a", WRITE);
+        RunTest.writeMark("M:tmp.a,F:tmpD\n");
+
+        // 只修改属性
+        Files.setLastModifiedTime(RunTest.tmpF, FileTime.fromMillis(System.currentTimeMillis() +
+                                                                    10000));
+        RunTest.writeMark("");
+        // 写入相同内容
+        Files.writeString(RunTest.tmpF, "a", WRITE);
+        RunTest.writeMark("");
+
+        Files.writeString(RunTest.tmpF, "b", WRITE);
+        RunTest.writeMark("M:tmp.a,F:tmpD\n");
+        Files.deleteIfExists(RunTest.tmpF);
+    }
+
+    @Test
+    public
+    void stable() throws Exception {
+        // 停止写入后触发一次
+        sendWatch.watchFil(RunTest.tmpF, ENTRY_CREATE, ENTRY_MODIFY)
+                 .stable(300)
+                 .addCall(PathKind.ENTRY_STABLE, nextstate((even, path) -> RunTest.out.write(
+                         "S:" + even.context().toString() + ",F:tmpF\n")));
+
+        Files.createFile(RunTest.tmpF);
+        for ( int i = 0; i < 5; i++ ) {
+            Files.writeString(RunTest.tmpF, "a", APPEND);
+            Thread.sleep(100);
+        }
+        // 持续写入中不触发
+        Assert.assertEquals("", RunTest.out.toString());
+        Thread.sleep(400);
+        RunTest.writeMark("S:tmp.a,F:tmpF\n");
+        Files.deleteIfExists(RunTest.tmpF);
+    }
+
+    @Test
+    public
+    void tail() throws IOException {
+        // 接收追加的内容
+        sendWatch.watchFil(RunTest.tmpF, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+                 .tail((buf, pos) -> {
+                     RunTest.out.write("T:" + pos + ":" + StandardCharsets.UTF_8.decode(buf) +
+                                       ",F:tmpF\n");
+                     return LoopState.WATCH_NEXT;
+                 });
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("");
+        Files.writeString(RunTest.tmpF, "ab", APPEND);
+        RunTest.writeMark("T:0:ab,F:tmpF\n");
+        Files.writeString(RunTest.tmpF, "cd", APPEND);
+        RunTest.writeMark("T:2:cd,F:tmpF\n");
+
+        // 截断
+        Files.writeString(RunTest.tmpF, "x", WRITE, TRUNCATE_EXISTING);
+        RunTest.writeMark("T:0:x,F:tmpF\n");
+
+        // 轮换
+        Files.deleteIfExists(RunTest.tmpF);
+        RunTest.writeMark("");
+        Files.writeString(RunTest.tmpF, "new");
+        RunTest.writeMark("T:0:new,F:tmpF\n");
+        Files.deleteIfExists(RunTest.tmpF);
+    }
+
+    @Test
+    public
+    void publisher() throws IOException {
+        var sub = new AtomicReference<Flow.Subscription>();
+        // 按请求数量接收
+        sendWatch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_DELETE)
+                 .publisher(8, false)
+                 .subscribe(new Flow.Subscriber<>() {
+                     @Override
+                     public
+                     void onSubscribe(Flow.Subscription subscription) {
+                         sub.set(subscription);
+                         subscription.request(1);
+                     }
+
+                     @Override
+                     public
+                     void onNext(PathEvent item) {
+                         RunTest.out.write(
+                                 "P:" + item.kind().name() + ":" + item.context().getFileName() +
+                                 ",F:tmpD\n");
+                     }
+
+                     @Override
+                     public
+                     void onError(Throwable throwable) { throwable.printStackTrace(); }
+
+                     @Override
+                     public
+                     void onComplete() { RunTest.out.write("P:END\n"); }
+                 });
+
+        Files.createFile(RunTest.tmpF);
+        RunTest.writeMark("P:ENTRY_CREATE:tmp.a,F:tmpD\n");
+        // 没有请求时缓冲
+        Files.deleteIfExists(RunTest.tmpF);
+        RunTest.writeMark("");
+        sub.get().request(1);
+        RunTest.writeMark("P:ENTRY_DELETE:tmp.a,F:tmpD\n");
+        sendWatch.close();
+        RunTest.writeMark("P:END\n");
+    }
+
+    @Test
+    public
+    void poll() throws IOException {
+        // 使用轮询后端的监控服务
+        try ( var watch = PDFileWatch.sendWatch()
+                                     .backend(PollBackend.build().interval(20).build())
+                                     .build() ) {
+            watch.watchDir(RunTest.tmpD, ENTRY_CREATE, ENTRY_DELETE)
+                 .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                         "C:" + even.context().toString() + ",F:tmpD\n")))
+                 .addCall(ENTRY_DELETE, nextstate((even, path) -> RunTest.out.write(
+                         "D:" + even.context().toString() + ",F:tmpD\n")));
+
+            Files.createFile(RunTest.tmpF);
+            RunTest.writeMark("C:tmp.a,F:tmpD\n");
+            Files.deleteIfExists(RunTest.tmpF);
+            RunTest.writeMark("D:tmp.a,F:tmpD\n");
+        }
+    }
+
+    @Test
+    public
+    void stats() throws Exception {
+        // 通过 JMX 发布统计
+        try ( var watch = PDFileWatch.sendWatch().jmx(true).build() ) {
+            var loop = watch.watchDir(RunTest.tmpD, ENTRY_CREATE)
+                            .addCall(ENTRY_CREATE, nextstate((even, path) -> RunTest.out.write(
+                                    "C:" + even.context().toString() + ",F:tmpD\n")));
+
+            Files.createFile(RunTest.tmpF);
+            RunTest.writeMark("C:tmp.a,F:tmpD\n");
+            Files.deleteIfExists(RunTest.tmpF);
+
+            var stats = loop.stats();
+            Assert.assertTrue(stats.events > 0);
+            Assert.assertEquals(1, stats.createCalls);
+            Assert.assertTrue(watch.stats().keys > 0);
+            var name = watch.exportMBean();
+            Assert.assertEquals(1L, ManagementFactory.getPlatformMBeanServer()
+                                                    .getAttribute(name, "CreateCallbacks"));
+        }
+    }
+}